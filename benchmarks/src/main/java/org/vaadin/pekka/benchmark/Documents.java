@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka.benchmark;
+
+/**
+ * Generates editor values of a given size.
+ */
+final class Documents {
+
+    private Documents() {
+    }
+
+    /**
+     * Creates HTML similar to what the editor produces, of exactly the given length.
+     *
+     * @param length  the length of the HTML
+     * @param variant text that makes documents of the same length differ
+     * @return the HTML
+     */
+    static String html(int length, String variant) {
+        String paragraph = "<p>Lorem <b>ipsum</b> dolor sit amet, <i>consectetur</i> adipiscing elit " + variant
+                + ".</p><ul><li>one</li><li>two</li></ul><h2>Heading</h2>";
+        StringBuilder builder = new StringBuilder(length + paragraph.length());
+        while (builder.length() < length) {
+            builder.append(paragraph);
+        }
+        builder.setLength(length);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka.benchmark;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.pekka.WysiwygE;
+import org.vaadin.pekka.WysiwygE.Tool;
+
+/**
+ * Construction of the editor, including the toolbar, and the tool visibility methods.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ToolbarBenchmark {
+
+    private static final Tool[] ROLE_TOOLS = {Tool.BOLD, Tool.ITALIC, Tool.UNDERLINE, Tool.LINK, Tool.ORDERED,
+            Tool.UNORDERED};
+
+    private WysiwygE wysiwygE;
+
+    @Setup
+    public void setup() {
+        wysiwygE = new WysiwygE();
+    }
+
+    @Benchmark
+    public WysiwygE construct() {
+        return new WysiwygE();
+    }
+
+    @Benchmark
+    public WysiwygE constructWithTools() {
+        return new WysiwygE(ROLE_TOOLS);
+    }
+
+    @Benchmark
+    public WysiwygE constructCompact() {
+        WysiwygE compact = new WysiwygE();
+        compact.setToolbarMode(WysiwygE.ToolbarMode.COMPACT);
+        return compact;
+    }
+
+    @Benchmark
+    public boolean setToolsVisible() {
+        wysiwygE.setToolsVisible(ROLE_TOOLS);
+        wysiwygE.setAllToolsVisible(true);
+        return wysiwygE.isAllToolsVisible();
+    }
+
+    @Benchmark
+    public boolean setToolVisibility() {
+        wysiwygE.setToolVisibility(EnumSet.of(Tool.BOLD, Tool.ITALIC));
+        wysiwygE.setToolVisibility(EnumSet.allOf(Tool.class));
+        return wysiwygE.isAllToolsVisible();
+    }
+
+    @Benchmark
+    public boolean isAllToolsVisible() {
+        return wysiwygE.isAllToolsVisible();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.vaadin.pekka.WysiwygE;
+
+/**
+ * Setting values of different sizes, and the value change dispatch to a number of listeners.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValueBenchmark {
+
+    @Param({"1024", "65536", "1048576", "5242880"})
+    public int size;
+
+    @Param({"0", "1", "10"})
+    public int listeners;
+
+    private WysiwygE wysiwygE;
+    private String value1;
+    private String value2;
+    private boolean toggle;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        wysiwygE = new WysiwygE();
+        for (int i = 0; i < listeners; i++) {
+            wysiwygE.addValueChangeListener(event -> blackhole.consume(event.getValue()));
+        }
+        value1 = Documents.html(size, "a");
+        value2 = Documents.html(size, "b");
+    }
+
+    /**
+     * Alternates between two values of the same size so that each call is a change.
+     */
+    @Benchmark
+    public String setValue() {
+        toggle = !toggle;
+        wysiwygE.setValue(toggle ? value1 : value2);
+        return wysiwygE.getValue();
+    }
+}
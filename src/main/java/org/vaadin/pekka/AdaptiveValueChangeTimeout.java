@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Objects;
+
+import com.vaadin.flow.function.SerializableSupplier;
+
+/**
+ * A policy for adapting the value change timeout of a {@link WysiwygE} to the situation, see
+ * {@link WysiwygE#setAdaptiveValueChangeTimeout(AdaptiveValueChangeTimeout)}.
+ * <p>
+ * The timeout is between the minimum and maximum timeout. It grows towards the maximum when the value is large, when
+ * the value is synchronized often and when the server is under load, so that small notes are synchronized quickly
+ * and large documents don't flood the server with full value updates.
+ */
+public class AdaptiveValueChangeTimeout implements Serializable {
+
+    /**
+     * A load signal for the system load average per available processor, as reported by the JVM. Reports no load
+     * on platforms where the load average is not available.
+     */
+    public static final SerializableSupplier<Double> SYSTEM_LOAD = () -> {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        double load = os.getSystemLoadAverage();
+        return load < 0 ? 0 : load / os.getAvailableProcessors();
+    };
+
+    /* A value of this size or larger is considered large, 1 MB. */
+    private static final double LARGE_VALUE_LENGTH = 1 << 20;
+    /* Synchronizing this often or more is considered frequent. */
+    private static final double FREQUENT_SYNCS_PER_SECOND = 4;
+
+    private final int minTimeout;
+    private final int maxTimeout;
+    private SerializableSupplier<Double> loadSignal = () -> 0d;
+
+    /**
+     * Creates a policy with the given bounds and no load signal.
+     *
+     * @param minTimeout the minimum timeout in milliseconds, used for small values synchronized rarely
+     * @param maxTimeout the maximum timeout in milliseconds, not smaller than the minimum
+     */
+    public AdaptiveValueChangeTimeout(int minTimeout, int maxTimeout) {
+        if (minTimeout < 0 || maxTimeout < minTimeout) {
+            throw new IllegalArgumentException(
+                    "Invalid timeout bounds " + minTimeout + "-" + maxTimeout + " ms");
+        }
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    /**
+     * Sets the signal for the server load. The signal should return a value from {@code 0} for an idle server to
+     * {@code 1} for a fully loaded one, larger values are treated as {@code 1}. It is called on each
+     * synchronization, so it should be cheap.
+     *
+     * @param loadSignal the load signal, not {@code null}
+     * @see #SYSTEM_LOAD
+     */
+    public void setLoadSignal(SerializableSupplier<Double> loadSignal) {
+        this.loadSignal = Objects.requireNonNull(loadSignal, "Load signal cannot be null");
+    }
+
+    /**
+     * Gets the minimum timeout.
+     *
+     * @return the minimum timeout in milliseconds
+     */
+    public int getMinTimeout() {
+        return minTimeout;
+    }
+
+    /**
+     * Gets the maximum timeout.
+     *
+     * @return the maximum timeout in milliseconds
+     */
+    public int getMaxTimeout() {
+        return maxTimeout;
+    }
+
+    /**
+     * Computes the timeout for the given situation. Each of the value size, the synchronization frequency and the
+     * load pushes the timeout towards the maximum independently of the others.
+     *
+     * @param valueLength    the length of the current value
+     * @param syncsPerSecond the recent rate of value synchronizations from the client
+     * @return the timeout in milliseconds
+     */
+    public int computeTimeout(int valueLength, double syncsPerSecond) {
+        // log scale, 1 kB and below is small
+        double size = clamp(Math.log(Math.max(valueLength, 1024) / 1024d) / Math.log(LARGE_VALUE_LENGTH / 1024));
+        double frequency = clamp(syncsPerSecond / FREQUENT_SYNCS_PER_SECOND);
+        Double load = loadSignal.get();
+        double factor = 1 - (1 - size) * (1 - frequency) * (1 - clamp(load == null ? 0 : load));
+        return (int) Math.round(minTimeout + (maxTimeout - minTimeout) * factor);
+    }
+
+    private static double clamp(double value) {
+        return Double.isNaN(value) ? 0 : Math.max(0, Math.min(1, value));
+    }
+}
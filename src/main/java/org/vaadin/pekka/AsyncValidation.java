@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.data.binder.ValidationResult;
+import com.vaadin.flow.data.binder.Validator;
+import com.vaadin.flow.data.binder.ValueContext;
+
+/**
+ * Runs the asynchronous validators of an editor on an executor, one value at a time. Validating a new value
+ * cancels the validation of the previous one, and only the result for the latest value is published back to the
+ * editor.
+ */
+final class AsyncValidation implements Serializable {
+
+    private final List<Validator<String>> validators = new CopyOnWriteArrayList<>();
+    /* Incremented for each validated value, a task whose number isn't the latest has been superseded. */
+    private final AtomicLong generation = new AtomicLong();
+    /* Not serializable, the default executor is used after deserialization. */
+    private transient Executor executor;
+    /* Accessed while holding the session lock. */
+    private transient FutureTask<Void> running;
+    /* The last published result and the value it is for, accessed while holding the session lock. */
+    private String resultValue;
+    private ValidationResult result;
+
+    AsyncValidation(Executor executor) {
+        this.executor = executor;
+    }
+
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    void add(Validator<String> validator) {
+        validators.add(validator);
+    }
+
+    void remove(Validator<String> validator) {
+        validators.remove(validator);
+    }
+
+    boolean isEmpty() {
+        return validators.isEmpty();
+    }
+
+    boolean isPending() {
+        return running != null;
+    }
+
+    /**
+     * Returns the published result for the given value, or {@code null} if there is none because the validation of
+     * the value is pending or hasn't been started. Called while holding the session lock.
+     */
+    ValidationResult getResult(String value) {
+        return running == null && value.equals(resultValue) ? result : null;
+    }
+
+    /**
+     * Starts validating the current value of the editor, cancelling the validation of the previous value. Called
+     * while holding the session lock. Nothing is validated while the editor is detached.
+     */
+    void validate(WysiwygE editor) {
+        cancel();
+        UI ui = editor.getUI().orElse(null);
+        if (ui == null) {
+            return;
+        }
+        long id = generation.incrementAndGet();
+        String value = editor.getValue();
+        ValueContext context = new ValueContext(editor, editor);
+        FutureTask<Void> task = new FutureTask<>(() -> run(ui, editor, id, value, context), null);
+        running = task;
+        getExecutor().execute(task);
+    }
+
+    void cancel() {
+        generation.incrementAndGet();
+        if (running != null) {
+            // validators that take long can stop early by checking the interrupted flag
+            running.cancel(true);
+            running = null;
+        }
+    }
+
+    private void run(UI ui, WysiwygE editor, long id, String value, ValueContext context) {
+        ValidationResult result = ValidationResult.ok();
+        try {
+            for (Validator<String> validator : validators) {
+                if (isSuperseded(id)) {
+                    return;
+                }
+                result = validator.apply(value, context);
+                if (result.isError()) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            // to the error handler of the session
+            publish(ui, id, () -> {
+                throw e;
+            });
+            return;
+        }
+        if (isSuperseded(id)) {
+            return;
+        }
+        ValidationResult published = result;
+        publish(ui, id, () -> {
+            resultValue = value;
+            this.result = published;
+            editor.setValidationResult(published);
+        });
+    }
+
+    private boolean isSuperseded(long id) {
+        return generation.get() != id || Thread.currentThread().isInterrupted();
+    }
+
+    private void publish(UI ui, long id, Runnable command) {
+        try {
+            ui.access(() -> {
+                if (generation.get() == id) {
+                    running = null;
+                    command.run();
+                }
+            });
+        } catch (UIDetachedException e) {
+            // validated again when attached
+        }
+    }
+
+    private Executor getExecutor() {
+        if (executor == null) {
+            executor = AsyncValueChangeDispatcher.DefaultExecutor.INSTANCE;
+        }
+        return executor;
+    }
+}
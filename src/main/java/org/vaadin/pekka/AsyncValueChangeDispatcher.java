@@ -0,0 +1,145 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.vaadin.flow.component.AbstractField.ComponentValueChangeEvent;
+import com.vaadin.flow.component.HasValue.ValueChangeListener;
+
+/**
+ * Hands value changes over to an executor, at most one task at a time per listener. Changes arriving while the
+ * listener is busy replace each other, so the listener only sees the latest value.
+ */
+class AsyncValueChangeDispatcher implements ValueChangeListener<ComponentValueChangeEvent<WysiwygE, String>> {
+
+    private final AsyncValueChangeListener listener;
+    /* Not serializable, the default executor is used after deserialization. */
+    private transient Executor executor;
+    /* The task draining these doesn't survive serialization, so neither do they. */
+    private transient AtomicReference<AsyncValueChangeEvent> pending = new AtomicReference<>();
+    private transient AtomicBoolean scheduled = new AtomicBoolean();
+    private transient volatile AsyncValueChangeEvent latest;
+    private volatile boolean removed;
+
+    AsyncValueChangeDispatcher(Executor executor, AsyncValueChangeListener listener) {
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    @Override
+    public void valueChanged(ComponentValueChangeEvent<WysiwygE, String> event) {
+        if (removed) {
+            return;
+        }
+        WysiwygE source = event.getSource();
+        // taken before the new value is parsed, which replaces the old value's document in the cache
+        HtmlDocument changedDocument = source.parsedDocument(event.getOldValue());
+        HtmlDocument document = source.getDocument();
+        AsyncValueChangeEvent previous;
+        AsyncValueChangeEvent next;
+        do {
+            previous = pending.get();
+            // a replaced event was never delivered, keep the value the listener last saw
+            String oldValue = previous == null ? event.getOldValue() : previous.getOldValue();
+            HtmlDocument oldDocument = previous == null ? changedDocument : previous.getOldDocument();
+            next = new AsyncValueChangeEvent(this, source, oldValue, oldDocument, event.getValue(), document,
+                    event.isFromClient());
+            latest = next;
+        } while (!pending.compareAndSet(previous, next));
+        schedule();
+    }
+
+    boolean isSuperseded(AsyncValueChangeEvent event) {
+        return removed || latest != event;
+    }
+
+    void remove() {
+        removed = true;
+        pending.set(null);
+    }
+
+    private void schedule() {
+        if (pending.get() == null || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            getExecutor().execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            throw e;
+        }
+    }
+
+    private void drain() {
+        try {
+            AsyncValueChangeEvent event;
+            while ((event = pending.getAndSet(null)) != null && !removed) {
+                listener.valueChanged(event);
+            }
+        } finally {
+            scheduled.set(false);
+            // a change that arrived after the loop ended but before the flag was cleared
+            schedule();
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        pending = new AtomicReference<>();
+        scheduled = new AtomicBoolean();
+    }
+
+    private Executor getExecutor() {
+        if (executor == null) {
+            executor = DefaultExecutor.INSTANCE;
+        }
+        return executor;
+    }
+
+    /**
+     * Virtual threads when running on a JVM that has them, the common pool otherwise.
+     */
+    static final class DefaultExecutor {
+        static final Executor INSTANCE = create();
+
+        private DefaultExecutor() {
+        }
+
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return ForkJoinPool.commonPool();
+            }
+        }
+    }
+}
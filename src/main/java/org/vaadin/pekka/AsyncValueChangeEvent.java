@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.Serializable;
+
+/**
+ * A value change of a {@link WysiwygE} delivered to an {@link AsyncValueChangeListener}. The event doesn't hold the
+ * session lock, so the editor and other components may only be accessed through
+ * {@link com.vaadin.flow.component.UI#access(com.vaadin.flow.server.Command)}.
+ */
+public class AsyncValueChangeEvent implements Serializable {
+
+    private final AsyncValueChangeDispatcher dispatcher;
+    private final WysiwygE source;
+    private final String oldValue;
+    private final HtmlDocument oldDocument;
+    private final String value;
+    private final HtmlDocument document;
+    private final boolean fromClient;
+    private ValueChangeRange changeRange;
+
+    AsyncValueChangeEvent(AsyncValueChangeDispatcher dispatcher, WysiwygE source, String oldValue,
+                          HtmlDocument oldDocument, String value, HtmlDocument document, boolean fromClient) {
+        this.dispatcher = dispatcher;
+        this.source = source;
+        this.oldValue = oldValue;
+        this.oldDocument = oldDocument;
+        this.value = value;
+        this.document = document;
+        this.fromClient = fromClient;
+    }
+
+    /**
+     * Gets the editor whose value changed. Only access it while holding its session lock.
+     *
+     * @return the source editor
+     */
+    public WysiwygE getSource() {
+        return source;
+    }
+
+    /**
+     * Gets the value the listener was last notified about, or the value before the change for the first event.
+     *
+     * @return the old value
+     */
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    /**
+     * Gets the new value.
+     *
+     * @return the new value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /* The document of the old value if the editor had already parsed it, or null. */
+    HtmlDocument getOldDocument() {
+        return oldDocument;
+    }
+
+    /**
+     * Gets the new value as a document. The document is parsed on the first call, outside of the session lock,
+     * and shared with the editor's {@link WysiwygE#getDocument()}.
+     *
+     * @return the document for the new value
+     */
+    public HtmlDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Gets the range of the value that changed between {@link #getOldValue()} and {@link #getValue()}. It is
+     * computed on the first call, outside of the session lock.
+     *
+     * @return the changed range
+     */
+    public synchronized ValueChangeRange getChangeRange() {
+        if (changeRange == null) {
+            changeRange = new ValueChangeRange(oldValue, value, null, oldDocument, document);
+        }
+        return changeRange;
+    }
+
+    /**
+     * Returns whether the value change originates from the client.
+     *
+     * @return {@code true} if the change was made by the user, {@code false} if programmatically
+     */
+    public boolean isFromClient() {
+        return fromClient;
+    }
+
+    /**
+     * Returns whether the value has changed again, or the listener has been removed, after this event. Long running
+     * listeners should check this and stop working on values that are no longer current.
+     *
+     * @return {@code true} if this event is superseded
+     */
+    public boolean isSuperseded() {
+        return dispatcher.isSuperseded(this);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * Saves drafts of the values of {@link WysiwygE} editors to a {@link DraftStore} behind the editors, and restores
+ * them when the editors are attached again, e.g. after the server or the browser crashed before the application
+ * saved the document.
+ * <p>
+ * The changes made in the browser are collected and written to the store together at most one interval after the
+ * first of them. Only the latest value of each draft is written, however many times the editor synced in between,
+ * so the store sees one batch per interval instead of a write per change. If writing fails, the drafts are kept
+ * and written with the next batch.
+ * <p>
+ * The autosave is shared between sessions and is not serializable, the editors bound to it can be serialized with
+ * their sessions though. Call {@link #discard(String)} when the
+ * application has saved the document, so that the draft isn't restored over it.
+ * <p>
+ * The drafts are scoped, so two sessions editing the same document each get their own draft instead of one user's
+ * unsaved changes being restored into another user's editor. By default each session is its own scope; an
+ * application with logged in users can scope the drafts by user with {@link #setScope(Function)}, so that the drafts
+ * are restored in the user's next session too.
+ */
+public class Autosave {
+
+    /**
+     * The default longest time in milliseconds from a change to writing it to the store.
+     */
+    public static final long DEFAULT_INTERVAL = 2000;
+
+    private static final String SCOPE_ATTRIBUTE = Autosave.class.getName() + ".scope";
+
+    private final DraftStore store;
+    private final ScheduledExecutorService scheduler;
+    private final long interval;
+
+    private volatile Function<VaadinSession, String> scope = Autosave::sessionScope;
+
+    /* The drafts not written yet, the latest value per key. */
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Creates an autosave to the given store, writing with the default interval on a shared daemon thread.
+     *
+     * @param store the store for the drafts, not {@code null}
+     */
+    public Autosave(DraftStore store) {
+        this(store, DefaultScheduler.INSTANCE, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Creates an autosave to the given store.
+     *
+     * @param store     the store for the drafts, not {@code null}
+     * @param scheduler the scheduler to write the drafts with, not {@code null}
+     * @param interval  the longest time in milliseconds from a change to writing it to the store, {@code >= 0}
+     */
+    public Autosave(DraftStore store, ScheduledExecutorService scheduler, long interval) {
+        Objects.requireNonNull(store, "Store cannot be null");
+        Objects.requireNonNull(scheduler, "Scheduler cannot be null");
+        if (interval < 0) {
+            throw new IllegalArgumentException("Interval cannot be negative: " + interval);
+        }
+        this.store = store;
+        this.scheduler = scheduler;
+        this.interval = interval;
+    }
+
+    /**
+     * Sets the scope of the drafts of a session. The scope is prepended to the keys of the drafts in the store. By
+     * default each session has a scope of its own, a random id kept in the session.
+     * <p>
+     * The scope is looked up from the session of the editor when it is bound, and from the current session in
+     * {@link #getDraft(String)} and {@link #discard(String)}. Drafts outside of any session are not scoped.
+     *
+     * @param scope gives the scope of the drafts of a session, e.g. the name of the user; returning {@code null}
+     *              leaves the drafts of the session unscoped; not {@code null}
+     */
+    public void setScope(Function<VaadinSession, String> scope) {
+        this.scope = Objects.requireNonNull(scope, "Scope cannot be null");
+    }
+
+    /**
+     * Saves drafts of the editor's value with the given key. The changes made in the browser are saved, changes
+     * made with {@link WysiwygE#setValue(String)} are not. When the editor is attached, now or later, a draft
+     * saved with the key replaces the editor's value.
+     * <p>
+     * Should be called while holding the session lock of the editor, e.g. from UI code.
+     * <p>
+     * The listeners added to the editor don't prevent serializing the session, but they don't keep the binding
+     * either: after the session has been deserialized, e.g. on another server, drafts of the editor are no longer
+     * saved until it is bound again.
+     *
+     * @param editor the editor, not {@code null}
+     * @param key    the key of the draft, e.g. the id of the edited document, not {@code null}; scoped by the
+     *               session of the editor, see {@link #setScope(Function)}
+     * @return a registration for no longer saving drafts of the editor
+     * @throws UncheckedIOException if reading the draft from the store fails
+     */
+    public Registration bind(WysiwygE editor, String key) {
+        Objects.requireNonNull(editor, "Editor cannot be null");
+        Objects.requireNonNull(key, "Key cannot be null");
+        String draftKey = scopedKey(editor.getUI().map(UI::getSession).orElseGet(VaadinSession::getCurrent), key);
+        AutosaveReference reference = new AutosaveReference(this);
+        Registration valueRegistration = editor.addValueChangeListener(event -> {
+            Autosave autosave = reference.autosave;
+            if (autosave != null && event.isFromClient()) {
+                autosave.changed(draftKey, event.getValue());
+            }
+        });
+        Registration attachRegistration = editor.addAttachListener(event -> {
+            Autosave autosave = reference.autosave;
+            if (autosave != null) {
+                autosave.restore(editor, draftKey);
+            }
+        });
+        if (editor.getUI().isPresent()) {
+            restore(editor, draftKey);
+        }
+        return () -> {
+            valueRegistration.remove();
+            attachRegistration.remove();
+            reference.autosave = null;
+        };
+    }
+
+    /**
+     * Gets the latest draft with the given key in the scope of the current session, whether it has been written to
+     * the store yet or not.
+     *
+     * @param key the key of the draft, not {@code null}
+     * @return the draft, or {@code null} if there is none
+     * @throws UncheckedIOException if reading the draft from the store fails
+     */
+    public String getDraft(String key) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        return loadDraft(scopedKey(VaadinSession.getCurrent(), key));
+    }
+
+    private String loadDraft(String key) {
+        String draft = pending.get(key);
+        if (draft != null) {
+            return draft;
+        }
+        try {
+            return store.load(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Loading the draft " + key + " failed", e);
+        }
+    }
+
+    /**
+     * Removes the draft with the given key in the scope of the current session, e.g. after the application has saved
+     * the document.
+     *
+     * @param key the key of the draft, not {@code null}
+     * @throws UncheckedIOException if removing the draft from the store fails
+     */
+    public synchronized void discard(String key) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        String draftKey = scopedKey(VaadinSession.getCurrent(), key);
+        // synchronized with flush, which would otherwise write the draft back
+        pending.remove(draftKey);
+        try {
+            store.remove(draftKey);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Removing the draft " + key + " failed", e);
+        }
+    }
+
+    /**
+     * Writes the drafts changed so far to the store without waiting for the interval.
+     *
+     * @throws UncheckedIOException if writing fails, the drafts are written with the next batch in that case
+     */
+    public synchronized void flush() {
+        scheduled.set(false);
+        Map<String, String> batch = new HashMap<>(pending);
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            store.save(batch);
+        } catch (IOException e) {
+            schedule();
+            throw new UncheckedIOException("Saving " + batch.size() + " drafts failed", e);
+        }
+        // a draft changed or discarded meanwhile stays as it is
+        batch.forEach(pending::remove);
+    }
+
+    private void changed(String key, String value) {
+        pending.put(key, value);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                try {
+                    flush();
+                } catch (UncheckedIOException e) {
+                    // retried after the next interval
+                }
+            }, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private String scopedKey(VaadinSession session, String key) {
+        String sessionScope = session == null ? null : scope.apply(session);
+        return sessionScope == null ? key : sessionScope + "/" + key;
+    }
+
+    private static String sessionScope(VaadinSession session) {
+        String id = (String) session.getAttribute(SCOPE_ATTRIBUTE);
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            session.setAttribute(SCOPE_ATTRIBUTE, id);
+        }
+        return id;
+    }
+
+    private void restore(WysiwygE editor, String key) {
+        String draft = loadDraft(key);
+        if (draft != null) {
+            editor.setValue(draft);
+        }
+    }
+
+    /**
+     * What the listeners added to an editor refer to the autosave through. The autosave isn't serializable, so it
+     * is dropped with the session.
+     */
+    private static final class AutosaveReference implements Serializable {
+        private transient volatile Autosave autosave;
+
+        private AutosaveReference(Autosave autosave) {
+            this.autosave = autosave;
+        }
+    }
+
+    private static final class DefaultScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wysiwyg-e-autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private DefaultScheduler() {
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * One document shared by any number of {@link WysiwygE} editors, in any UIs and sessions.
+ * <p>
+ * The changes coming from the bound editors are collected and merged into the document once per tick. Each
+ * change is transformed against the changes merged after the version its editor last received, as those apply after
+ * the editor's own earlier changes, so concurrent edits to different parts of the document are all kept instead of
+ * the last one overwriting the others. After the
+ * merge the document is pushed with {@link UI#access(com.vaadin.flow.server.Command)}, once per UI, to the editors
+ * that don't have it yet. The editors that have changes waiting for the next tick are skipped, they get the
+ * document after their own changes have been merged. Pushing to the UIs requires server push to be enabled.
+ * <p>
+ * The document is merged as text, a merge of edits to the same tags can produce HTML that the browser has to
+ * repair. Edits made in the browser after the last sync and before the merged document arrives are replaced by
+ * the merged document; a short value change timeout on the editors keeps that window small. A change from an editor
+ * that isn't attached, and had no changes waiting when it was detached, is dropped the same way.
+ * <p>
+ * The hub is shared between sessions and is not serializable. It only refers to the bound editors while they are
+ * attached, so an editor in a closed UI can be garbage collected even if its binding is never removed.
+ */
+public class CollaborationHub {
+
+    /**
+     * The default time between merges in milliseconds.
+     */
+    public static final long DEFAULT_TICK = 100;
+
+    private final ScheduledExecutorService scheduler;
+    private final long tick;
+
+    private final CopyOnWriteArrayList<Binding> bindings = new CopyOnWriteArrayList<>();
+    private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /* Guarded by this. */
+    private String value;
+    private long version;
+
+    /**
+     * Creates a hub for the given document, merging with the default tick on a shared daemon thread.
+     *
+     * @param value the initial value of the document, not {@code null}
+     */
+    public CollaborationHub(String value) {
+        this(value, DefaultScheduler.INSTANCE, DEFAULT_TICK);
+    }
+
+    /**
+     * Creates a hub for the given document.
+     *
+     * @param value     the initial value of the document, not {@code null}
+     * @param scheduler the scheduler to run the merges with, not {@code null}
+     * @param tick      the time in milliseconds to collect changes before merging them, {@code >= 0}
+     */
+    public CollaborationHub(String value, ScheduledExecutorService scheduler, long tick) {
+        Objects.requireNonNull(value, "Value cannot be null");
+        Objects.requireNonNull(scheduler, "Scheduler cannot be null");
+        if (tick < 0) {
+            throw new IllegalArgumentException("Tick cannot be negative: " + tick);
+        }
+        this.value = value;
+        this.scheduler = scheduler;
+        this.tick = tick;
+    }
+
+    /**
+     * Binds the editor to the document. The editor's value is set to the current document, and changes made
+     * in the browser are merged into it from then on. Changes made with {@link WysiwygE#setValue(String)} are
+     * not shared, use {@link #setValue(String)} instead.
+     * <p>
+     * Should be called while holding the session lock of the editor, e.g. from UI code.
+     * <p>
+     * The listeners added to the editor don't prevent serializing the session, but they don't keep the binding
+     * either: after the session has been deserialized, e.g. on another server, the editor is no longer bound and
+     * has to be bound again.
+     *
+     * @param editor the editor to bind, not {@code null}
+     * @return a registration for unbinding the editor
+     */
+    public Registration bind(WysiwygE editor) {
+        Objects.requireNonNull(editor, "Editor cannot be null");
+        Binding binding = new Binding(editor);
+        BindingReference reference = new BindingReference(binding);
+        Registration valueRegistration = editor.addValueChangeListener(event -> {
+            Binding bound = reference.binding;
+            if (bound != null && event.isFromClient()) {
+                bound.changed(event.getValue());
+            }
+        });
+        Registration attachRegistration = editor.addAttachListener(event -> {
+            Binding bound = reference.binding;
+            if (bound != null) {
+                bound.attach(event.getUI());
+            }
+        });
+        Registration detachRegistration = editor.addDetachListener(event -> {
+            Binding bound = reference.binding;
+            if (bound != null) {
+                bound.detach();
+            }
+        });
+        editor.getUI().ifPresent(binding::attach);
+        if (binding.ui == null) {
+            binding.sync();
+        }
+        return () -> {
+            valueRegistration.remove();
+            attachRegistration.remove();
+            detachRegistration.remove();
+            Binding bound = reference.binding;
+            if (bound != null) {
+                reference.binding = null;
+                bound.remove();
+            }
+        };
+    }
+
+    /**
+     * Gets the current merged value of the document.
+     *
+     * @return the value of the document
+     */
+    public synchronized String getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the version of the document, incremented by every merged change.
+     *
+     * @return the version of the document
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Replaces the document with the given value on the next tick. Concurrent changes from the editors are
+     * merged with it like with any other change.
+     *
+     * @param value the new value, not {@code null}
+     */
+    public void setValue(String value) {
+        Objects.requireNonNull(value, "Value cannot be null");
+        synchronized (this) {
+            TextEdit edit = TextEdit.diff(this.value, value);
+            if (edit == null) {
+                return;
+            }
+            changes.add(new Change(null, version, edit));
+        }
+        schedule();
+    }
+
+    /**
+     * Merges the changes received so far and pushes the result to the editors without waiting for the next tick.
+     */
+    public void flush() {
+        scheduled.set(false);
+        if (merge()) {
+            push();
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, tick, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean merge() {
+        synchronized (this) {
+            boolean merged = false;
+            long firstVersion = version;
+            List<TextEdit> log = new ArrayList<>();
+            Change change;
+            while ((change = changes.poll()) != null) {
+                merged = true;
+                TextEdit edit;
+                if (change.binding == null) {
+                    // based on a version of this merge, the hub always has the merged document
+                    edit = change.edit;
+                    for (int i = (int) (change.baseVersion - firstVersion); i < log.size(); i++) {
+                        edit = edit.transform(log.get(i));
+                    }
+                } else {
+                    change.binding.pending.decrementAndGet();
+                    edit = change.binding.rebase(change.edit);
+                    if (edit == null) {
+                        // the edits to transform it with are gone, the editor gets the merged document instead
+                        continue;
+                    }
+                }
+                value = edit.apply(value);
+                version++;
+                log.add(edit);
+                for (Binding binding : bindings) {
+                    if (binding != change.binding) {
+                        binding.missed(edit);
+                    }
+                }
+            }
+            for (Binding binding : bindings) {
+                binding.unlinkIfDetached();
+            }
+            return merged;
+        }
+    }
+
+    private void push() {
+        Map<UI, List<Binding>> byUi = new IdentityHashMap<>();
+        for (Binding binding : bindings) {
+            UI ui = binding.ui;
+            if (ui != null) {
+                byUi.computeIfAbsent(ui, key -> new ArrayList<>()).add(binding);
+            }
+        }
+        byUi.forEach((ui, uiBindings) -> ui.access(() -> uiBindings.forEach(Binding::sync)));
+    }
+
+    private void enqueue(Change change) {
+        changes.add(change);
+        schedule();
+    }
+
+    private final class Binding {
+        private final WysiwygE editor;
+        /* The changes of this editor waiting for the next merge. */
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile UI ui;
+        private volatile boolean removed;
+        /* What the browser has, updated while holding the session lock. */
+        private String text;
+        /*
+         * Guarded by the hub. The merged edits the browser doesn't have, as they apply after its own changes, or null
+         * when the editor isn't linked and they are no longer collected.
+         */
+        private List<TextEdit> unseen;
+
+        private Binding(WysiwygE editor) {
+            this.editor = editor;
+        }
+
+        private void changed(String newValue) {
+            TextEdit edit = TextEdit.diff(text, newValue);
+            if (edit == null) {
+                return;
+            }
+            text = newValue;
+            pending.incrementAndGet();
+            enqueue(new Change(this, 0, edit));
+        }
+
+        private void attach(UI attachedUi) {
+            synchronized (CollaborationHub.this) {
+                ui = attachedUi;
+                if (!removed) {
+                    bindings.addIfAbsent(this);
+                }
+            }
+            sync();
+        }
+
+        private void detach() {
+            synchronized (CollaborationHub.this) {
+                ui = null;
+                unlinkIfDetached();
+            }
+        }
+
+        /* Guarded by the hub. The edits are collected for a detached editor until its queued changes are merged. */
+        private void unlinkIfDetached() {
+            if (ui == null && pending.get() == 0) {
+                bindings.remove(this);
+                unseen = null;
+            }
+        }
+
+        private void remove() {
+            synchronized (CollaborationHub.this) {
+                removed = true;
+                bindings.remove(this);
+                unseen = null;
+            }
+        }
+
+        /* Guarded by the hub. */
+        private void missed(TextEdit edit) {
+            if (unseen != null) {
+                unseen.add(edit);
+            }
+        }
+
+        /*
+         * Guarded by the hub. Returns the change made in the browser as it applies to the hub's document, and moves
+         * the edits the browser doesn't have after it, or returns null if they are no longer known.
+         */
+        private TextEdit rebase(TextEdit edit) {
+            if (unseen == null) {
+                return null;
+            }
+            for (ListIterator<TextEdit> iterator = unseen.listIterator(); iterator.hasNext(); ) {
+                TextEdit other = iterator.next();
+                iterator.set(other.transform(edit, false));
+                edit = edit.transform(other, true);
+            }
+            return edit;
+        }
+
+        private void sync() {
+            if (removed || pending.get() > 0) {
+                return;
+            }
+            String current;
+            synchronized (CollaborationHub.this) {
+                current = value;
+                unseen = bindings.contains(this) ? new ArrayList<>() : null;
+            }
+            if (!current.equals(editor.getValue())) {
+                editor.setValue(current);
+            }
+            text = current;
+        }
+    }
+
+    /**
+     * What the listeners added to an editor refer to the binding through. The binding isn't serializable, so it is
+     * dropped with the session.
+     */
+    private static final class BindingReference implements Serializable {
+        private transient volatile Binding binding;
+
+        private BindingReference(Binding binding) {
+            this.binding = binding;
+        }
+    }
+
+    private static final class Change {
+        private final Binding binding;
+        /* The version a change of the hub itself is based on, a change of an editor is rebased by its binding. */
+        private final long baseVersion;
+        private final TextEdit edit;
+
+        private Change(Binding binding, long baseVersion, TextEdit edit) {
+            this.binding = binding;
+            this.baseVersion = baseVersion;
+            this.edit = edit;
+        }
+    }
+
+    private static final class DefaultScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wysiwyg-e-collaboration");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private DefaultScheduler() {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Storage for the drafts that {@link Autosave} writes behind the editors, keyed by a key chosen by the
+ * application, e.g. the id of the edited document.
+ * <p>
+ * Implementations need to be thread safe.
+ *
+ * @see InMemoryDraftStore
+ * @see FileDraftStore
+ */
+public interface DraftStore {
+
+    /**
+     * Stores the given drafts, replacing earlier drafts with the same keys. The drafts are the latest value of
+     * each editor changed since the previous call, written together so that they can be stored with one write.
+     *
+     * @param drafts the drafts by key
+     * @throws IOException if storing fails
+     */
+    void save(Map<String, String> drafts) throws IOException;
+
+    /**
+     * Gets the latest draft with the given key.
+     *
+     * @param key the key of the draft
+     * @return the draft, or {@code null} if there is no draft with the given key
+     * @throws IOException if reading fails
+     */
+    String load(String key) throws IOException;
+
+    /**
+     * Removes the draft with the given key, if there is one.
+     *
+     * @param key the key of the draft
+     * @throws IOException if removing fails
+     */
+    void remove(String key) throws IOException;
+}
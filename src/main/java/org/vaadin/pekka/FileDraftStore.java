@@ -0,0 +1,263 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link DraftStore} that appends the drafts to a journal file. Each {@link #save(Map)} is a single sequential
+ * write followed by a sync to the disk, and only the positions of the latest drafts are kept in memory.
+ * <p>
+ * Every record has a checksum. When the store is opened the journal is read through and anything after the last
+ * complete record, left by a crash in the middle of a write, is truncated. Once the journal is more than twice
+ * the size of the latest drafts and over a megabyte, the latest drafts are copied to a new journal that replaces
+ * the old one.
+ * <p>
+ * The file can only be used by one store at a time. Close the store when it is no longer used.
+ */
+public class FileDraftStore implements DraftStore, Closeable {
+
+    /* The length of the payload and its CRC-32. */
+    private static final int HEADER = 8;
+    /* The type of the record and the length of the key, followed by the key and the value. */
+    private static final int PAYLOAD_HEADER = 5;
+    private static final byte DRAFT = 1;
+    private static final byte REMOVED = 2;
+    private static final long COMPACTION_THRESHOLD = 1 << 20;
+
+    private final Path file;
+    /* Guarded by this. */
+    private FileChannel channel;
+    private final Map<String, Record> index = new HashMap<>();
+    private long end;
+    private long liveBytes;
+
+    /**
+     * Creates a store that uses the given journal file, recovering the drafts in it. The file and its directory
+     * are created if they don't exist.
+     *
+     * @param file the journal file, not {@code null}
+     * @throws IOException if the file can't be created or read
+     */
+    public FileDraftStore(Path file) throws IOException {
+        Objects.requireNonNull(file, "File cannot be null");
+        this.file = file.toAbsolutePath();
+        Files.createDirectories(this.file.getParent());
+        channel = open(this.file);
+        recover();
+    }
+
+    @Override
+    public synchronized void save(Map<String, String> drafts) throws IOException {
+        if (drafts.isEmpty()) {
+            return;
+        }
+        Map<String, byte[]> encoded = new HashMap<>();
+        int size = 0;
+        for (Map.Entry<String, String> draft : drafts.entrySet()) {
+            byte[] record = encode(DRAFT, draft.getKey(), Objects.requireNonNull(draft.getValue(),
+                    "Draft cannot be null"));
+            encoded.put(draft.getKey(), record);
+            size += record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        long position = end;
+        for (Map.Entry<String, byte[]> record : encoded.entrySet()) {
+            buffer.put(record.getValue());
+        }
+        buffer.flip();
+        append(buffer);
+        for (Map.Entry<String, byte[]> record : encoded.entrySet()) {
+            update(record.getKey(), new Record(position, record.getValue().length));
+            position += record.getValue().length;
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized String load(String key) throws IOException {
+        Record record = index.get(key);
+        if (record == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(record.length);
+        read(buffer, record.position);
+        int keyLength = buffer.getInt(HEADER + 1);
+        int valueStart = HEADER + PAYLOAD_HEADER + keyLength;
+        return new String(buffer.array(), valueStart, record.length - valueStart, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void remove(String key) throws IOException {
+        if (!index.containsKey(key)) {
+            return;
+        }
+        append(ByteBuffer.wrap(encode(REMOVED, key, "")));
+        update(key, null);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void recover() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        long position = 0;
+        while (position + HEADER <= size) {
+            header.clear();
+            read(header, position);
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < PAYLOAD_HEADER || length > size - position - HEADER) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            read(payload, position + HEADER);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array(), 0, length);
+            byte type = payload.get();
+            int keyLength = payload.getInt();
+            if ((int) crc.getValue() != checksum || keyLength < 0 || keyLength > length - PAYLOAD_HEADER) {
+                break;
+            }
+            String key = new String(payload.array(), PAYLOAD_HEADER, keyLength, StandardCharsets.UTF_8);
+            update(key, type == DRAFT ? new Record(position, HEADER + length) : null);
+            position += HEADER + length;
+        }
+        if (position < size) {
+            // a write interrupted by a crash
+            channel.truncate(position);
+            channel.force(true);
+        }
+        end = position;
+    }
+
+    private void update(String key, Record record) {
+        Record previous = record == null ? index.remove(key) : index.put(key, record);
+        if (previous != null) {
+            liveBytes -= previous.length;
+        }
+        if (record != null) {
+            liveBytes += record.length;
+        }
+    }
+
+    private void append(ByteBuffer buffer) throws IOException {
+        long position = end;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        channel.force(false);
+        // a failed write is overwritten by the next one, and truncated by the recovery if there is none
+        end = position;
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of the journal " + file);
+            }
+            offset += read;
+        }
+        buffer.flip();
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (end < COMPACTION_THRESHOLD || end <= 2 * liveBytes) {
+            return;
+        }
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Map<String, Record> compacted = new HashMap<>();
+            long position = 0;
+            try (FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                for (Map.Entry<String, Record> entry : index.entrySet()) {
+                    Record record = entry.getValue();
+                    long transferred = 0;
+                    while (transferred < record.length) {
+                        transferred += channel.transferTo(record.position + transferred,
+                                record.length - transferred, target);
+                    }
+                    compacted.put(entry.getKey(), new Record(position, record.length));
+                    position += record.length;
+                }
+                target.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                index.putAll(compacted);
+                end = position;
+            } finally {
+                channel = open(file);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static byte[] encode(byte type, String key, String value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = PAYLOAD_HEADER + keyBytes.length + valueBytes.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + length);
+        buffer.position(HEADER);
+        buffer.put(type).putInt(keyBytes.length).put(keyBytes).put(valueBytes);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER, length);
+        buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static final class Record {
+        private final long position;
+        private final int length;
+
+        private Record(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+}
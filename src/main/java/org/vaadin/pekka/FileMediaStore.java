@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+
+/**
+ * A {@link MediaStore} that keeps each media as a file named by its hash in the given directory, with the mime type in
+ * a {@code .type} file next to it. Files are written to a temporary file first and then moved in place, so
+ * concurrent writers of the same media don't see partial files.
+ */
+public class FileMediaStore implements MediaStore {
+
+    private final String directory;
+
+    /**
+     * Creates a store that uses the given directory. The directory is created if it doesn't exist.
+     *
+     * @param directory the directory for the media files, not {@code null}
+     * @throws IOException if the directory can't be created
+     */
+    public FileMediaStore(Path directory) throws IOException {
+        Objects.requireNonNull(directory, "Directory cannot be null");
+        Files.createDirectories(directory);
+        this.directory = directory.toAbsolutePath().toString();
+    }
+
+    @Override
+    public void store(String hash, String mimeType, byte[] data) throws IOException {
+        Path file = file(hash);
+        if (Files.exists(file)) {
+            return;
+        }
+        write(typeFile(hash), mimeType.getBytes(StandardCharsets.UTF_8));
+        // the media file last, its existence marks the media as stored
+        write(file, data);
+    }
+
+    @Override
+    public String getMimeType(String hash) throws IOException {
+        if (!Files.exists(file(hash))) {
+            return null;
+        }
+        return new String(Files.readAllBytes(typeFile(hash)), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public InputStream read(String hash) throws IOException {
+        return Files.newInputStream(file(hash));
+    }
+
+    private void write(Path target, byte[] data) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, data);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path file(String hash) throws IOException {
+        // the hash ends up in the file name, don't let it point anywhere else
+        if (!hash.matches("[0-9a-f]{64}")) {
+            throw new NoSuchFileException(hash);
+        }
+        return Paths.get(directory, hash);
+    }
+
+    private Path typeFile(String hash) throws IOException {
+        return Paths.get(directory, file(hash).getFileName() + ".type");
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Writes HTML in a canonical form, so that markup that only differs in ways that don't show to the user compares
+ * equal. Whitespace is collapsed and dropped next to blocks, attributes and style declarations are sorted, spans
+ * without attributes are unwrapped, empty inline elements are dropped and so is the single placeholder {@code <br>}
+ * ending a block. Non-breaking spaces and any further line breaks show, so they are kept.
+ */
+final class HtmlCanonicalizer {
+
+    private static final Set<String> BLOCKS = new HashSet<>(Arrays.asList(
+            "address", "article", "aside", "blockquote", "caption", "dd", "div", "dl", "dt", "figcaption", "figure",
+            "footer", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "li", "ol", "p", "pre", "section", "table",
+            "tbody", "td", "tfoot", "th", "thead", "tr", "ul"));
+
+    private static final Set<String> INLINES = new HashSet<>(Arrays.asList(
+            "a", "abbr", "b", "cite", "code", "del", "em", "font", "i", "ins", "kbd", "mark", "q", "s", "small",
+            "span", "strike", "strong", "sub", "sup", "u"));
+
+    private static final String BR = "<br>";
+
+    private final StringBuilder builder;
+    private boolean space;
+    private boolean blockStart = true;
+    private int preDepth;
+
+    private HtmlCanonicalizer(int capacity) {
+        builder = new StringBuilder(capacity);
+    }
+
+    /**
+     * Returns the canonical form of the given HTML.
+     *
+     * @param html the HTML, not {@code null}
+     * @return the canonical form
+     */
+    static String canonicalize(String html) {
+        HtmlCanonicalizer canonicalizer = new HtmlCanonicalizer(html.length());
+        canonicalizer.walk(HtmlDocument.parse(html).getRoot());
+        return canonicalizer.builder.toString();
+    }
+
+    /*
+     * Walks the tree with an explicit stack of the open elements, a value of any nesting depth must not overflow the
+     * call stack of the request thread.
+     */
+    private void walk(HtmlDocument.Element root) {
+        Deque<Open> open = new ArrayDeque<>();
+        open.push(new Open(root, null, 0, 0, false));
+        while (!open.isEmpty()) {
+            Open current = open.peek();
+            if (!current.children.hasNext()) {
+                open.pop();
+                end(current);
+                continue;
+            }
+            HtmlDocument.Node child = current.children.next();
+            if (child instanceof HtmlDocument.Element) {
+                Open started = start((HtmlDocument.Element) child);
+                if (started != null) {
+                    open.push(started);
+                }
+            } else {
+                text(child.getText());
+            }
+        }
+    }
+
+    private Open start(HtmlDocument.Element element) {
+        String tag = element.getTag();
+        Map<String, String> attributes = element.getAttributes();
+        if ("span".equals(tag) && attributes.isEmpty()) {
+            return new Open(element, null, 0, 0, false);
+        }
+        boolean block = BLOCKS.contains(tag);
+        if (block) {
+            blockBoundary();
+        }
+        int start = builder.length();
+        builder.append('<').append(tag);
+        new TreeMap<>(attributes).forEach(this::attribute);
+        builder.append('>');
+        if (HtmlDocument.isVoid(tag)) {
+            return null;
+        }
+        if ("pre".equals(tag)) {
+            preDepth++;
+        }
+        return new Open(element, tag, start, builder.length(), block);
+    }
+
+    private void end(Open element) {
+        String tag = element.tag;
+        if (tag == null) {
+            return;
+        }
+        if ("pre".equals(tag)) {
+            preDepth--;
+        }
+        if (element.block) {
+            if (builder.length() - BR.length() >= element.contentStart && endsWith(BR)) {
+                builder.setLength(builder.length() - BR.length());
+            }
+            blockBoundary();
+        } else if (INLINES.contains(tag) && builder.length() == element.contentStart) {
+            builder.setLength(element.start);
+            return;
+        }
+        builder.append("</").append(tag).append('>');
+    }
+
+    private void attribute(String name, String value) {
+        builder.append(' ').append(name).append("=\"");
+        if ("style".equals(name)) {
+            escape(style(value), true);
+        } else {
+            escape(value.trim(), true);
+        }
+        builder.append('"');
+    }
+
+    private void text(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (preDepth == 0 && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space && !blockStart) {
+                builder.append(' ');
+            }
+            space = false;
+            blockStart = false;
+            escape(c, false);
+        }
+    }
+
+    private void blockBoundary() {
+        space = false;
+        blockStart = true;
+    }
+
+    private boolean endsWith(String suffix) {
+        int start = builder.length() - suffix.length();
+        return start >= 0 && builder.indexOf(suffix, start) == start;
+    }
+
+    private void escape(String value, boolean attribute) {
+        for (int i = 0; i < value.length(); i++) {
+            escape(value.charAt(i), attribute);
+        }
+    }
+
+    private void escape(char c, boolean attribute) {
+        switch (c) {
+            case '&':
+                builder.append("&amp;");
+                break;
+            case '<':
+                builder.append("&lt;");
+                break;
+            case '>':
+                builder.append("&gt;");
+                break;
+            case '"':
+                builder.append(attribute ? "&quot;" : "\"");
+                break;
+            default:
+                builder.append(c);
+                break;
+        }
+    }
+
+    private static String style(String style) {
+        Set<String> declarations = new TreeSet<>();
+        for (String declaration : style.split(";")) {
+            int colon = declaration.indexOf(':');
+            if (colon > 0) {
+                declarations.add(declaration.substring(0, colon).trim().toLowerCase(Locale.ENGLISH) + ": "
+                        + declaration.substring(colon + 1).trim().replaceAll("\\s+", " "));
+            }
+        }
+        return String.join("; ", declarations);
+    }
+
+    /**
+     * An element whose children are being written.
+     */
+    private static final class Open {
+        private final Iterator<HtmlDocument.Node> children;
+        private final String tag;
+        private final int start;
+        private final int contentStart;
+        private final boolean block;
+
+        /*
+         * The tag is null when nothing is written around the children, like for the root or an unwrapped span.
+         */
+        private Open(HtmlDocument.Element element, String tag, int start, int contentStart, boolean block) {
+            children = element.getChildren().iterator();
+            this.tag = tag;
+            this.start = start;
+            this.contentStart = contentStart;
+            this.block = block;
+        }
+    }
+}
@@ -0,0 +1,934 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Converts the HTML values of {@link WysiwygE} to plain text or Markdown, e.g. for search indexes, email digests and
+ * exports. The converter understands the markup of the bundled tools: headings, block quotes, ordered and unordered
+ * lists, tables, code, links and images, bold, italic and strike through. Alignment, colors and underline have no
+ * representation in either format and only their text is kept.
+ * <p>
+ * A document is converted in a single pass without building a tree, and the output is written block by block, so
+ * only the current block is held in memory (a table as a whole). For large amounts of stored values,
+ * {@link #convertAll(Iterator, Function, Format, BiConsumer)} converts in parallel batches on a fork/join pool.
+ * <p>
+ * Blocks are separated by an empty line, list items and table rows by a line break. In plain text lists keep their
+ * markers and indentation, table cells are separated by tabs and everything else is just the text. The Markdown
+ * is CommonMark with GitHub flavored tables and strike through.
+ */
+public final class HtmlConverter {
+
+    /**
+     * The format to convert to.
+     */
+    public enum Format {
+        PLAIN_TEXT, MARKDOWN;
+    }
+
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final int SEQUENTIAL_THRESHOLD = 8;
+
+    private static final Set<String> BLOCKS = new HashSet<>(Arrays.asList(
+            "address", "article", "aside", "blockquote", "caption", "dd", "div", "dl", "dt", "figcaption", "figure",
+            "footer", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "li", "ol", "p", "pre", "section", "table",
+            "tbody", "td", "tfoot", "th", "thead", "tr", "ul"));
+
+    private static final Set<String> DROPPED_CONTENT = new HashSet<>(Arrays.asList(
+            "script", "style", "textarea", "title", "iframe", "object", "embed", "template", "noscript", "audio",
+            "video"));
+
+    private HtmlConverter() {
+    }
+
+    /**
+     * Converts the given HTML to plain text.
+     *
+     * @param html the HTML, not {@code null}
+     * @return the plain text
+     */
+    public static String toPlainText(String html) {
+        return convert(html, Format.PLAIN_TEXT);
+    }
+
+    /**
+     * Converts the given HTML to Markdown.
+     *
+     * @param html the HTML, not {@code null}
+     * @return the Markdown
+     */
+    public static String toMarkdown(String html) {
+        return convert(html, Format.MARKDOWN);
+    }
+
+    /**
+     * Converts the given HTML.
+     *
+     * @param html   the HTML, not {@code null}
+     * @param format the format to convert to, not {@code null}
+     * @return the converted document
+     */
+    public static String convert(String html, Format format) {
+        Objects.requireNonNull(html, "HTML cannot be null");
+        StringBuilder builder = new StringBuilder(html.length());
+        try {
+            convert(html, format, builder);
+        } catch (IOException e) {
+            // a StringBuilder doesn't throw
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Converts the given HTML, writing the result to the given output as each block is finished. The output is not
+     * flushed or closed.
+     *
+     * @param html   the HTML, not {@code null}
+     * @param format the format to convert to, not {@code null}
+     * @param out    the output, e.g. a {@link java.io.Writer}, not {@code null}
+     * @throws IOException if writing to the output fails
+     */
+    public static void convert(String html, Format format, Appendable out) throws IOException {
+        Objects.requireNonNull(html, "HTML cannot be null");
+        Objects.requireNonNull(format, "Format cannot be null");
+        Objects.requireNonNull(out, "Output cannot be null");
+        Conversion conversion = new Conversion(format, out);
+        try {
+            HtmlTokenizer.tokenize(html, conversion);
+            conversion.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Converts the given values in parallel on the common fork/join pool. {@code null} values are converted to
+     * {@code null}.
+     *
+     * @param values the HTML values, not {@code null}
+     * @param format the format to convert to, not {@code null}
+     * @return the converted values in the same order
+     */
+    public static List<String> convertAll(List<String> values, Format format) {
+        Objects.requireNonNull(values, "Values cannot be null");
+        Objects.requireNonNull(format, "Format cannot be null");
+        List<String> source = values instanceof RandomAccess ? values : new ArrayList<>(values);
+        String[] results = new String[source.size()];
+        ForkJoinPool.commonPool().invoke(new ConversionTask<>(source, Function.identity(), format, results, 0,
+                results.length));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Converts the HTML of the given items in parallel on the common fork/join pool, in batches of 1024 items. See
+     * {@link #convertAll(Iterator, Function, Format, BiConsumer, ForkJoinPool, int)}.
+     *
+     * @param items    the items to convert, not {@code null}
+     * @param html     gets the HTML of an item, not {@code null}
+     * @param format   the format to convert to, not {@code null}
+     * @param consumer receives each item with its converted value, not {@code null}
+     * @param <T>      the item type
+     */
+    public static <T> void convertAll(Iterator<? extends T> items, Function<? super T, String> html, Format format,
+                                      BiConsumer<? super T, String> consumer) {
+        convertAll(items, html, format, consumer, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Converts the HTML of the given items in parallel on the given fork/join pool. The items are read in batches,
+     * and a batch is converted before the next one is read, so at most one batch of items and their results is held
+     * in memory however many items there are.
+     * <p>
+     * The HTML function is called on the pool threads, so it can do work like decompressing the value. The consumer
+     * is called on the calling thread in the order of the items. {@code null} HTML is converted to {@code null}.
+     *
+     * @param items     the items to convert, not {@code null}
+     * @param html      gets the HTML of an item, not {@code null}
+     * @param format    the format to convert to, not {@code null}
+     * @param consumer  receives each item with its converted value, not {@code null}
+     * @param pool      the pool to convert on, not {@code null}
+     * @param batchSize the number of items in a batch, at least 1
+     * @param <T>       the item type
+     */
+    public static <T> void convertAll(Iterator<? extends T> items, Function<? super T, String> html, Format format,
+                                      BiConsumer<? super T, String> consumer, ForkJoinPool pool, int batchSize) {
+        Objects.requireNonNull(items, "Items cannot be null");
+        Objects.requireNonNull(html, "HTML function cannot be null");
+        Objects.requireNonNull(format, "Format cannot be null");
+        Objects.requireNonNull(consumer, "Consumer cannot be null");
+        Objects.requireNonNull(pool, "Pool cannot be null");
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        List<T> batch = new ArrayList<>(batchSize);
+        String[] results = new String[batchSize];
+        while (items.hasNext()) {
+            batch.clear();
+            while (batch.size() < batchSize && items.hasNext()) {
+                batch.add(items.next());
+            }
+            pool.invoke(new ConversionTask<>(batch, html, format, results, 0, batch.size()));
+            for (int i = 0; i < batch.size(); i++) {
+                consumer.accept(batch.get(i), results[i]);
+                results[i] = null;
+            }
+        }
+    }
+
+    private static final class ConversionTask<T> extends RecursiveAction {
+
+        private final List<T> items;
+        private final Function<? super T, String> html;
+        private final Format format;
+        private final String[] results;
+        private final int start;
+        private final int end;
+
+        private ConversionTask(List<T> items, Function<? super T, String> html, Format format, String[] results,
+                               int start, int end) {
+            this.items = items;
+            this.html = html;
+            this.format = format;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= SEQUENTIAL_THRESHOLD) {
+                for (int i = start; i < end; i++) {
+                    String value = html.apply(items.get(i));
+                    results[i] = value == null ? null : convert(value, format);
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new ConversionTask<>(items, html, format, results, start, middle),
+                    new ConversionTask<>(items, html, format, results, middle, end));
+        }
+    }
+
+    private static final class Container {
+
+        private final boolean list;
+        private final boolean ordered;
+        private int number;
+        private String marker;
+        private boolean markerPending;
+
+        private Container(boolean list, boolean ordered, int start) {
+            this.list = list;
+            this.ordered = ordered;
+            number = start - 1;
+        }
+
+        private String indent() {
+            return ordered ? "    " : "  ";
+        }
+    }
+
+    private static final class Inline {
+
+        private final String tag;
+        private final String open;
+        private final String close;
+        private int start;
+
+        private Inline(String tag, String open, String close, int start) {
+            this.tag = tag;
+            this.open = open;
+            this.close = close;
+            this.start = start;
+        }
+    }
+
+    /* Converts one document; the inline content of the current block is collected to line and written at its end. */
+    private static final class Conversion implements HtmlTokenizer.Handler {
+
+        private final boolean markdown;
+        private final Appendable out;
+        private final StringBuilder line = new StringBuilder();
+        private final StringBuilder decoded = new StringBuilder();
+        private final List<Container> containers = new ArrayList<>();
+        private final Deque<Inline> inlines = new ArrayDeque<>();
+        private boolean space;
+        private int dropDepth;
+        private int preDepth;
+        private int codeDepth;
+        private int heading;
+        private boolean written;
+        private boolean previousInList;
+        private int previousQuotes;
+        private int tableDepth;
+        private List<List<String>> rows;
+        private List<String> row;
+        private boolean cellOpen;
+
+        private Conversion(Format format, Appendable out) {
+            markdown = format == Format.MARKDOWN;
+            this.out = out;
+        }
+
+        @Override
+        public void startTag(String name, List<String> attributes, boolean selfClosing) {
+            if (DROPPED_CONTENT.contains(name)) {
+                if (!selfClosing && !HtmlDocument.isVoid(name)) {
+                    dropDepth++;
+                }
+                return;
+            }
+            if (dropDepth > 0) {
+                return;
+            }
+            switch (name) {
+                case "table":
+                    if (tableDepth++ == 0) {
+                        block();
+                        rows = new ArrayList<>();
+                    } else {
+                        space = true;
+                    }
+                    return;
+                case "tr":
+                    if (tableDepth == 1) {
+                        endRow();
+                        row = new ArrayList<>();
+                    }
+                    return;
+                case "td":
+                case "th":
+                    if (tableDepth == 1) {
+                        endCell();
+                        cellOpen = true;
+                        line.setLength(0);
+                        space = false;
+                    } else {
+                        space = true;
+                    }
+                    return;
+                case "br":
+                    lineBreak();
+                    return;
+                case "img":
+                    image(attributes);
+                    return;
+                default:
+                    break;
+            }
+            if (tableDepth > 0 && BLOCKS.contains(name)) {
+                // the cells of a table are single lines
+                space = true;
+                return;
+            }
+            switch (name) {
+                case "ul":
+                case "ol":
+                    block();
+                    containers.add(new Container(true, "ol".equals(name), start(attributes)));
+                    break;
+                case "li":
+                    block();
+                    Container list = innermost(true);
+                    if (list != null) {
+                        list.number++;
+                        list.marker = list.ordered ? list.number + ". " : "- ";
+                        list.markerPending = true;
+                    }
+                    break;
+                case "blockquote":
+                    block();
+                    containers.add(new Container(false, false, 0));
+                    break;
+                case "pre":
+                    if (preDepth++ == 0) {
+                        block();
+                    }
+                    break;
+                case "hr":
+                    block();
+                    if (markdown) {
+                        write("***");
+                    }
+                    break;
+                case "h1":
+                case "h2":
+                case "h3":
+                case "h4":
+                case "h5":
+                case "h6":
+                    block();
+                    heading = name.charAt(1) - '0';
+                    break;
+                case "b":
+                case "strong":
+                    open(name, "**", "**");
+                    break;
+                case "i":
+                case "em":
+                    open(name, "*", "*");
+                    break;
+                case "s":
+                case "strike":
+                case "del":
+                    open(name, "~~", "~~");
+                    break;
+                case "code":
+                    if (open(name, "`", "`")) {
+                        codeDepth++;
+                    }
+                    break;
+                case "a":
+                    String href = attribute(attributes, "href");
+                    if (href != null && !href.isEmpty()) {
+                        open(name, "[", "](" + url(href) + ")");
+                    }
+                    break;
+                default:
+                    if (BLOCKS.contains(name)) {
+                        block();
+                    }
+                    break;
+            }
+        }
+
+        @Override
+        public void endTag(String name) {
+            if (DROPPED_CONTENT.contains(name)) {
+                dropDepth = Math.max(0, dropDepth - 1);
+                return;
+            }
+            if (dropDepth > 0) {
+                return;
+            }
+            switch (name) {
+                case "table":
+                    if (tableDepth > 0 && --tableDepth == 0) {
+                        writeTable();
+                    } else {
+                        space = true;
+                    }
+                    return;
+                case "tr":
+                    if (tableDepth == 1) {
+                        endRow();
+                    }
+                    return;
+                case "td":
+                case "th":
+                    if (tableDepth == 1) {
+                        endCell();
+                    } else {
+                        space = true;
+                    }
+                    return;
+                default:
+                    break;
+            }
+            if (tableDepth > 0 && BLOCKS.contains(name)) {
+                space = true;
+                return;
+            }
+            switch (name) {
+                case "ul":
+                case "ol":
+                    block();
+                    removeContainer(true);
+                    break;
+                case "blockquote":
+                    block();
+                    removeContainer(false);
+                    break;
+                case "pre":
+                    if (preDepth > 0 && --preDepth == 0) {
+                        writePre();
+                    }
+                    break;
+                case "h1":
+                case "h2":
+                case "h3":
+                case "h4":
+                case "h5":
+                case "h6":
+                    block();
+                    heading = 0;
+                    break;
+                default:
+                    if (BLOCKS.contains(name)) {
+                        block();
+                    } else {
+                        closeInline(name);
+                    }
+                    break;
+            }
+        }
+
+        @Override
+        public void text(String html, int start, int end) {
+            if (dropDepth > 0) {
+                return;
+            }
+            decoded.setLength(0);
+            HtmlTokenizer.decode(html, start, end, decoded);
+            append(decoded);
+        }
+
+        private void finish() {
+            if (preDepth > 0) {
+                preDepth = 0;
+                writePre();
+            }
+            if (tableDepth > 0) {
+                tableDepth = 0;
+                writeTable();
+            }
+            block();
+        }
+
+        private void append(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (preDepth > 0) {
+                    line.append(c == '\u00A0' ? ' ' : c);
+                } else if (Character.isWhitespace(c) || c == '\u00A0') {
+                    space = true;
+                } else {
+                    emitSpace();
+                    if (markdown && codeDepth == 0 && needsEscape(c)) {
+                        line.append('\\');
+                    }
+                    line.append(c);
+                }
+            }
+        }
+
+        private boolean needsEscape(char c) {
+            switch (c) {
+                case '\\':
+                case '`':
+                case '*':
+                case '_':
+                case '~':
+                case '[':
+                case ']':
+                case '<':
+                case '>':
+                    return true;
+                case '|':
+                    return tableDepth > 0;
+                default:
+                    return false;
+            }
+        }
+
+        private void emitSpace() {
+            if (!space) {
+                return;
+            }
+            space = false;
+            int position = line.length();
+            List<Inline> opened = new ArrayList<>();
+            // a space right after an opening marker goes before it, "** a**" isn't emphasis
+            for (Inline inline : inlines) {
+                if (inline.start != position) {
+                    break;
+                }
+                opened.add(inline);
+                position = inline.start - inline.open.length();
+            }
+            if (position == 0 || line.charAt(position - 1) == '\n') {
+                return;
+            }
+            line.insert(position, ' ');
+            for (Inline inline : opened) {
+                inline.start++;
+            }
+        }
+
+        private void lineBreak() {
+            if (tableDepth > 0) {
+                space = true;
+                return;
+            }
+            space = false;
+            if (markdown && preDepth == 0) {
+                line.append('\\');
+            }
+            line.append('\n');
+        }
+
+        private void image(List<String> attributes) {
+            String alt = attribute(attributes, "alt");
+            String src = attribute(attributes, "src");
+            if (!markdown || preDepth > 0 || src == null || src.isEmpty() || src.startsWith("data:")) {
+                // embedded images would be megabytes of base64 in the output
+                if (alt != null) {
+                    append(alt);
+                }
+                return;
+            }
+            emitSpace();
+            line.append("![");
+            if (alt != null) {
+                append(alt);
+                space = false;
+            }
+            line.append("](").append(url(src)).append(')');
+        }
+
+        private boolean open(String tag, String open, String close) {
+            if (!markdown || preDepth > 0) {
+                return false;
+            }
+            emitSpace();
+            line.append(open);
+            inlines.push(new Inline(tag, open, close, line.length()));
+            return true;
+        }
+
+        private void closeInline(String tag) {
+            for (Inline inline : inlines) {
+                if (inline.tag.equals(tag)) {
+                    Inline closed;
+                    do {
+                        closed = inlines.pop();
+                        close(closed);
+                    } while (closed != inline);
+                    return;
+                }
+            }
+        }
+
+        private void closeInlines() {
+            while (!inlines.isEmpty()) {
+                close(inlines.pop());
+            }
+        }
+
+        private void close(Inline inline) {
+            boolean code = "code".equals(inline.tag);
+            if (code) {
+                codeDepth--;
+            }
+            if (line.length() == inline.start) {
+                line.setLength(inline.start - inline.open.length());
+                return;
+            }
+            if (code && line.indexOf("`", inline.start) >= 0) {
+                line.insert(inline.start, "` ");
+                line.append(" `");
+            }
+            line.append(inline.close);
+        }
+
+        private void block() {
+            if (tableDepth > 0) {
+                space = true;
+                return;
+            }
+            if (preDepth > 0) {
+                line.append('\n');
+                return;
+            }
+            closeInlines();
+            space = false;
+            int end = line.length();
+            while (true) {
+                while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+                    end--;
+                }
+                // a trailing line break, "\\\n" in Markdown; an even number of backslashes is escaped text
+                if (markdown && end > 0 && backslashesBefore(end) % 2 == 1) {
+                    end--;
+                } else {
+                    break;
+                }
+            }
+            if (end == 0) {
+                line.setLength(0);
+                return;
+            }
+            line.setLength(end);
+            if (markdown) {
+                escapeStart();
+                if (heading > 0) {
+                    line.insert(0, "###### ", 6 - heading, 7);
+                }
+            }
+            write(line);
+            line.setLength(0);
+        }
+
+        private int backslashesBefore(int index) {
+            int backslashes = 0;
+            for (int i = index - 1; i >= 0 && line.charAt(i) == '\\'; i--) {
+                backslashes++;
+            }
+            return backslashes;
+        }
+
+        private void escapeStart() {
+            char first = line.charAt(0);
+            if (first == '#' || first == '-' || first == '+' || first == '=') {
+                line.insert(0, '\\');
+                return;
+            }
+            int i = 0;
+            while (i < line.length() && i < 9 && Character.isDigit(line.charAt(i))) {
+                i++;
+            }
+            if (i > 0 && i < line.length() && (line.charAt(i) == '.' || line.charAt(i) == ')')) {
+                line.insert(i, '\\');
+            }
+        }
+
+        private void writePre() {
+            int start = line.length() > 0 && line.charAt(0) == '\n' ? 1 : 0;
+            int end = line.length();
+            while (end > start && line.charAt(end - 1) == '\n') {
+                end--;
+            }
+            if (end == start) {
+                line.setLength(0);
+                return;
+            }
+            String code = line.substring(start, end);
+            line.setLength(0);
+            if (!markdown) {
+                write(code);
+                return;
+            }
+            int longest = 0;
+            int run = 0;
+            for (int i = 0; i < code.length(); i++) {
+                run = code.charAt(i) == '`' ? run + 1 : 0;
+                longest = Math.max(longest, run);
+            }
+            StringBuilder fence = new StringBuilder("```");
+            while (fence.length() <= longest) {
+                fence.append('`');
+            }
+            write(fence + "\n" + code + "\n" + fence);
+        }
+
+        private void endCell() {
+            if (!cellOpen) {
+                return;
+            }
+            closeInlines();
+            if (row == null) {
+                row = new ArrayList<>();
+            }
+            int end = line.length();
+            while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+                end--;
+            }
+            row.add(line.substring(0, end));
+            line.setLength(0);
+            space = false;
+            cellOpen = false;
+        }
+
+        private void endRow() {
+            endCell();
+            if (row != null && !row.isEmpty()) {
+                rows.add(row);
+            }
+            row = null;
+        }
+
+        private void writeTable() {
+            endRow();
+            line.setLength(0);
+            space = false;
+            int columns = 0;
+            for (List<String> cells : rows) {
+                columns = Math.max(columns, cells.size());
+            }
+            StringBuilder table = new StringBuilder();
+            for (int r = 0; r < rows.size(); r++) {
+                List<String> cells = rows.get(r);
+                if (r > 0) {
+                    table.append('\n');
+                }
+                for (int c = 0; c < columns; c++) {
+                    String cell = c < cells.size() ? cells.get(c) : "";
+                    if (markdown) {
+                        table.append(c == 0 ? "| " : " | ").append(cell);
+                    } else {
+                        table.append(c == 0 ? "" : "\t").append(cell);
+                    }
+                }
+                if (markdown) {
+                    table.append(" |");
+                    if (r == 0) {
+                        // the first row is the header, tables from the editor have no header cells
+                        table.append('\n');
+                        for (int c = 0; c < columns; c++) {
+                            table.append("| --- ");
+                        }
+                        table.append('|');
+                    }
+                }
+            }
+            rows = null;
+            if (columns > 0) {
+                write(table);
+            }
+        }
+
+        private void write(CharSequence content) {
+            StringBuilder first = new StringBuilder();
+            StringBuilder rest = new StringBuilder();
+            boolean inList = false;
+            int quotes = 0;
+            // the empty line before the block stays in the quotes shared with the previous block
+            int blank = 0;
+            for (Container container : containers) {
+                if (!container.list) {
+                    if (markdown) {
+                        first.append("> ");
+                        rest.append("> ");
+                        if (++quotes <= previousQuotes) {
+                            blank = rest.length() - 1;
+                        }
+                    }
+                    continue;
+                }
+                inList = true;
+                if (container.markerPending) {
+                    first.append(container.marker);
+                    container.markerPending = false;
+                } else {
+                    first.append(container.indent());
+                }
+                rest.append(container.indent());
+            }
+            try {
+                if (written) {
+                    out.append('\n');
+                    if (!inList || !previousInList) {
+                        out.append(rest, 0, blank).append('\n');
+                    }
+                }
+                out.append(first);
+                int start = 0;
+                for (int i = 0; i < content.length(); i++) {
+                    if (content.charAt(i) == '\n') {
+                        out.append(content, start, i + 1).append(rest);
+                        start = i + 1;
+                    }
+                }
+                out.append(content, start, content.length());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            written = true;
+            previousInList = inList;
+            previousQuotes = quotes;
+        }
+
+        private Container innermost(boolean list) {
+            for (int i = containers.size() - 1; i >= 0; i--) {
+                if (containers.get(i).list == list) {
+                    return containers.get(i);
+                }
+            }
+            return null;
+        }
+
+        private void removeContainer(boolean list) {
+            Container container = innermost(list);
+            if (container != null) {
+                containers.remove(container);
+            }
+        }
+    }
+
+    private static String attribute(List<String> attributes, String name) {
+        for (int i = 0; i < attributes.size(); i += 2) {
+            if (name.equals(attributes.get(i))) {
+                return attributes.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    private static int start(List<String> attributes) {
+        String start = attribute(attributes, "start");
+        if (start != null) {
+            try {
+                return Math.max(0, Integer.parseInt(start.trim()));
+            } catch (NumberFormatException e) {
+                // the default
+            }
+        }
+        return 1;
+    }
+
+    private static String url(String url) {
+        StringBuilder builder = new StringBuilder(url.length());
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            switch (c) {
+                case ' ':
+                    builder.append("%20");
+                    break;
+                case '(':
+                    builder.append("%28");
+                    break;
+                case ')':
+                    builder.append("%29");
+                    break;
+                case '<':
+                    builder.append("%3C");
+                    break;
+                case '>':
+                    builder.append("%3E");
+                    break;
+                default:
+                    builder.append(c);
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable tree of an editor value. The value is parsed the first time the tree is accessed, and the tree is
+ * safe to share between threads.
+ * <p>
+ * The parser is lenient in the same way as the markup produced by the editor: an end tag closes the nearest open
+ * element with the same name, unmatched end tags are ignored and open elements are closed at the end of the value.
+ * The tree is walked without recursion, so any depth of nesting is fine.
+ *
+ * @see WysiwygE#getDocument()
+ */
+public final class HtmlDocument implements Serializable {
+
+    private static final String[] VOID_ELEMENTS = {"area", "base", "br", "col", "embed", "hr", "img", "input",
+            "link", "meta", "param", "source", "track", "wbr"};
+
+    private final String html;
+    private transient volatile Element root;
+    private transient volatile String text;
+
+    private HtmlDocument(String html) {
+        this.html = html;
+    }
+
+    /**
+     * Creates a document for the given HTML. The HTML is parsed lazily.
+     *
+     * @param html the HTML, not {@code null}
+     * @return a new document
+     */
+    public static HtmlDocument parse(String html) {
+        Objects.requireNonNull(html, "HTML cannot be null");
+        return new HtmlDocument(html);
+    }
+
+    /**
+     * Gets the HTML this document was created from.
+     *
+     * @return the HTML
+     */
+    public String getHtml() {
+        return html;
+    }
+
+    /**
+     * Gets the root of the tree. The root has no tag name and contains the top level nodes of the value.
+     *
+     * @return the root element
+     */
+    public Element getRoot() {
+        Element result = root;
+        if (result == null) {
+            synchronized (this) {
+                result = root;
+                if (result == null) {
+                    root = result = build(html);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the text content of the whole document.
+     *
+     * @return the text content
+     */
+    public String getText() {
+        String result = text;
+        if (result == null) {
+            text = result = getRoot().getText();
+        }
+        return result;
+    }
+
+    /**
+     * Gets all the elements with the given tag name in document order.
+     *
+     * @param tag the tag name, case insensitive
+     * @return a stream of the elements
+     */
+    public Stream<Element> getElements(String tag) {
+        return getRoot().getDescendants().filter(element -> element.getTag().equalsIgnoreCase(tag));
+    }
+
+    private static Element build(String html) {
+        Element root = new Element("", Collections.emptyMap());
+        Deque<Element> open = new ArrayDeque<>();
+        open.push(root);
+        // the number of open elements by tag, so an end tag is matched without scanning the whole stack
+        Map<String, Integer> openCounts = new HashMap<>();
+        HtmlTokenizer.tokenize(html, new HtmlTokenizer.Handler() {
+            @Override
+            public void startTag(String name, List<String> attributes, boolean selfClosing) {
+                Map<String, String> attributeMap;
+                if (attributes.isEmpty()) {
+                    attributeMap = Collections.emptyMap();
+                } else {
+                    attributeMap = new LinkedHashMap<>();
+                    for (int i = 0; i < attributes.size(); i += 2) {
+                        attributeMap.putIfAbsent(attributes.get(i), attributes.get(i + 1));
+                    }
+                    attributeMap = Collections.unmodifiableMap(attributeMap);
+                }
+                Element element = new Element(name, attributeMap);
+                open.peek().children.add(element);
+                if (!selfClosing && !isVoid(name)) {
+                    open.push(element);
+                    openCounts.merge(name, 1, Integer::sum);
+                }
+            }
+
+            @Override
+            public void endTag(String name) {
+                if (!openCounts.containsKey(name)) {
+                    return;
+                }
+                String closed;
+                do {
+                    // closes the elements left open inside the ended one
+                    closed = open.pop().tag;
+                    openCounts.computeIfPresent(closed, (tag, count) -> count == 1 ? null : count - 1);
+                } while (!closed.equals(name));
+            }
+
+            @Override
+            public void text(String source, int start, int end) {
+                open.peek().children.add(new Text(HtmlTokenizer.decode(source, start, end)));
+            }
+        });
+        return root;
+    }
+
+    static boolean isVoid(String tag) {
+        for (String voidElement : VOID_ELEMENTS) {
+            if (voidElement.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A node in the document tree.
+     */
+    public abstract static class Node implements Serializable {
+
+        private Node() {
+        }
+
+        /**
+         * Gets the text content of this node and its descendants.
+         *
+         * @return the text content
+         */
+        public abstract String getText();
+    }
+
+    /**
+     * An element in the document tree.
+     */
+    public static final class Element extends Node {
+        private final String tag;
+        private final Map<String, String> attributes;
+        private final List<Node> children = new ArrayList<>();
+
+        private Element(String tag, Map<String, String> attributes) {
+            this.tag = tag;
+            this.attributes = attributes;
+        }
+
+        /**
+         * Gets the tag name.
+         *
+         * @return the lower case tag name, empty for the root
+         */
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * Gets the attributes with decoded values.
+         *
+         * @return an unmodifiable map of lower case attribute names to values
+         */
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+
+        /**
+         * Gets the value of the given attribute.
+         *
+         * @param name the attribute name, case insensitive
+         * @return the decoded value, or {@code null} if the element doesn't have the attribute
+         */
+        public String getAttribute(String name) {
+            return attributes.get(name.toLowerCase());
+        }
+
+        /**
+         * Gets the child nodes.
+         *
+         * @return an unmodifiable list of the children
+         */
+        public List<Node> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        /**
+         * Gets all the descendant elements in document order.
+         *
+         * @return a stream of the descendants
+         */
+        public Stream<Element> getDescendants() {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new Descendants(this),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+
+        @Override
+        public String getText() {
+            StringBuilder builder = new StringBuilder();
+            Deque<Iterator<Node>> open = new ArrayDeque<>();
+            open.push(children.iterator());
+            while (!open.isEmpty()) {
+                Iterator<Node> siblings = open.peek();
+                if (!siblings.hasNext()) {
+                    open.pop();
+                } else {
+                    Node child = siblings.next();
+                    if (child instanceof Element) {
+                        open.push(((Element) child).children.iterator());
+                    } else {
+                        builder.append(((Text) child).text);
+                    }
+                }
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            return "<" + tag + ">";
+        }
+    }
+
+    /**
+     * A text node in the document tree.
+     */
+    public static final class Text extends Node {
+        private final String text;
+
+        private Text(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * Iterates the descendant elements in document order, keeping the open levels in a stack.
+     */
+    private static final class Descendants implements Iterator<Element> {
+        private final Deque<Iterator<Node>> open = new ArrayDeque<>();
+        private Element next;
+
+        private Descendants(Element element) {
+            open.push(element.children.iterator());
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !open.isEmpty()) {
+                Iterator<Node> siblings = open.peek();
+                if (!siblings.hasNext()) {
+                    open.pop();
+                } else {
+                    Node child = siblings.next();
+                    if (child instanceof Element) {
+                        next = (Element) child;
+                        open.push(next.children.iterator());
+                    }
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Element next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Element result = next;
+            next = null;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.vaadin.pekka.WysiwygE.Tool;
+
+/**
+ * Removes everything but the formatting the editor produces from HTML, so that it can be shown outside of the
+ * editor. Tags that are not allowed are dropped but their text is kept, except for the contents of elements like
+ * {@code script} that are dropped altogether. Of the attributes only the presentational ones are kept, and links
+ * only with safe URLs.
+ * <p>
+ * What is allowed is given by a {@link Policy}, either all the formatting of the editor or only what a set of
+ * tools produces. The sanitizer is a single pass over the tokens, and text that needs no changes is copied from
+ * the source as is.
+ */
+final class HtmlSanitizer implements HtmlTokenizer.Handler {
+
+    /**
+     * The allowed tags and attributes. Immutable, a policy can be shared by any number of threads.
+     */
+    static final class Policy {
+
+        private final Set<String> tags;
+        private final Set<String> attributes;
+
+        private Policy(Set<String> tags, Set<String> attributes) {
+            this.tags = Collections.unmodifiableSet(tags);
+            this.attributes = Collections.unmodifiableSet(attributes);
+        }
+
+        /**
+         * Gets the policy for what the given tools produce. Paragraphs, line breaks and alignment are always
+         * allowed. The policy is compiled once for each combination of tools.
+         *
+         * @param tools the tools
+         * @return the policy
+         */
+        static Policy forTools(Set<Tool> tools) {
+            int mask = 0;
+            for (Tool tool : tools) {
+                mask |= 1 << tool.ordinal();
+            }
+            return POLICIES.computeIfAbsent(mask, key -> compile(tools));
+        }
+
+        private static Policy compile(Set<Tool> tools) {
+            Set<String> tags = new HashSet<>(BASE_TAGS);
+            Set<String> attributes = new HashSet<>(BASE_ATTRIBUTES);
+            for (Tool tool : tools) {
+                tags.addAll(TOOL_TAGS.getOrDefault(tool, Collections.emptyList()));
+                attributes.addAll(TOOL_ATTRIBUTES.getOrDefault(tool, Collections.emptyList()));
+            }
+            return new Policy(tags, attributes);
+        }
+    }
+
+    /* By the mask of the tools, there are as many as there are tool configurations in the application. */
+    private static final Map<Integer, Policy> POLICIES = new ConcurrentHashMap<>();
+    private static final List<String> BASE_TAGS = Arrays.asList("br", "div", "p", "span");
+    private static final List<String> BASE_ATTRIBUTES = Arrays.asList("align", "dir", "style", "title");
+    private static final Map<Tool, List<String>> TOOL_TAGS = new EnumMap<>(Tool.class);
+    private static final Map<Tool, List<String>> TOOL_ATTRIBUTES = new EnumMap<>(Tool.class);
+
+    static {
+        TOOL_TAGS.put(Tool.BOLD, Arrays.asList("b", "strong"));
+        TOOL_TAGS.put(Tool.ITALIC, Arrays.asList("em", "i"));
+        TOOL_TAGS.put(Tool.UNDERLINE, Arrays.asList("u"));
+        TOOL_TAGS.put(Tool.STRIKE, Arrays.asList("s", "strike"));
+        TOOL_TAGS.put(Tool.COLOR, Arrays.asList("font"));
+        TOOL_TAGS.put(Tool.CODE, Arrays.asList("code", "pre"));
+        TOOL_TAGS.put(Tool.LINK, Arrays.asList("a"));
+        TOOL_TAGS.put(Tool.IMAGE, Arrays.asList("img"));
+        TOOL_TAGS.put(Tool.AUDIO, Arrays.asList("audio", "source"));
+        TOOL_TAGS.put(Tool.VIDEO, Arrays.asList("source", "video"));
+        TOOL_TAGS.put(Tool.ORDERED, Arrays.asList("li", "ol"));
+        TOOL_TAGS.put(Tool.UNORDERED, Arrays.asList("li", "ul"));
+        // the browser indents with block quotes
+        TOOL_TAGS.put(Tool.INDENT, Arrays.asList("blockquote"));
+        TOOL_TAGS.put(Tool.BLOCKQUOTE, Arrays.asList("blockquote"));
+        TOOL_TAGS.put(Tool.HEADING, Arrays.asList("h1", "h2", "h3", "h4", "h5", "h6"));
+        TOOL_TAGS.put(Tool.TABLE, Arrays.asList("caption", "col", "colgroup", "table", "tbody", "td", "tfoot", "th",
+                "thead", "tr"));
+        TOOL_ATTRIBUTES.put(Tool.COLOR, Arrays.asList("color", "face", "size"));
+        TOOL_ATTRIBUTES.put(Tool.LINK, Arrays.asList("href"));
+        TOOL_ATTRIBUTES.put(Tool.IMAGE, Arrays.asList("alt", "height", "src", "width"));
+        TOOL_ATTRIBUTES.put(Tool.AUDIO, Arrays.asList("controls", "src", "type"));
+        TOOL_ATTRIBUTES.put(Tool.VIDEO, Arrays.asList("controls", "height", "src", "type", "width"));
+        TOOL_ATTRIBUTES.put(Tool.TABLE, Arrays.asList("colspan", "rowspan", "width"));
+    }
+
+    /**
+     * All the formatting of the editor, including what none of the tools produces like horizontal rules.
+     */
+    static final Policy ALL = new Policy(new HashSet<>(Arrays.asList(
+            "a", "audio", "b", "blockquote", "br", "caption", "code", "col", "colgroup", "div", "em", "font", "h1",
+            "h2", "h3", "h4", "h5", "h6", "hr", "i", "img", "li", "ol", "p", "pre", "s", "source", "span", "strike",
+            "strong", "sub", "sup", "table", "tbody", "td", "tfoot", "th", "thead", "tr", "u", "ul", "video")),
+            new HashSet<>(Arrays.asList(
+            "align", "alt", "color", "colspan", "controls", "dir", "face", "height", "href", "rowspan", "size", "src",
+            "style", "title", "type", "width")));
+
+    private static final Set<String> DROPPED_CONTENT = new HashSet<>(Arrays.asList(
+            "script", "style", "textarea", "title", "iframe", "object", "embed", "template", "noscript"));
+
+    private static final Set<String> URL_ATTRIBUTES = new HashSet<>(Arrays.asList("href", "src"));
+
+    private final Policy policy;
+    private final StringBuilder builder;
+    /* Decoded text, reused. */
+    private final StringBuilder decoded = new StringBuilder();
+    private int dropDepth;
+
+    private HtmlSanitizer(Policy policy, int capacity) {
+        this.policy = policy;
+        builder = new StringBuilder(capacity);
+    }
+
+    /**
+     * Sanitizes the given HTML with the {@link #ALL} policy.
+     *
+     * @param html the HTML to sanitize, not {@code null}
+     * @return the sanitized HTML
+     */
+    static String sanitize(String html) {
+        return sanitize(html, ALL);
+    }
+
+    /**
+     * Sanitizes the given HTML.
+     *
+     * @param html   the HTML to sanitize, not {@code null}
+     * @param policy what is allowed, not {@code null}
+     * @return the sanitized HTML, the same instance if nothing was changed
+     */
+    static String sanitize(String html, Policy policy) {
+        HtmlSanitizer sanitizer = new HtmlSanitizer(policy, html.length());
+        HtmlTokenizer.tokenize(html, sanitizer);
+        StringBuilder builder = sanitizer.builder;
+        return html.contentEquals(builder) ? html : builder.toString();
+    }
+
+    @Override
+    public void startTag(String name, List<String> attributes, boolean selfClosing) {
+        if (DROPPED_CONTENT.contains(name)) {
+            if (!selfClosing && !HtmlDocument.isVoid(name)) {
+                dropDepth++;
+            }
+            return;
+        }
+        if (dropDepth > 0 || !policy.tags.contains(name)) {
+            return;
+        }
+        builder.append('<').append(name);
+        for (int i = 0; i < attributes.size(); i += 2) {
+            String attribute = attributes.get(i);
+            String value = attributes.get(i + 1);
+            if (policy.attributes.contains(attribute) && isSafe(attribute, value)) {
+                builder.append(' ').append(attribute).append("=\"");
+                escape(value, 0, value.length(), true);
+                builder.append('"');
+            }
+        }
+        builder.append('>');
+    }
+
+    @Override
+    public void endTag(String name) {
+        if (DROPPED_CONTENT.contains(name)) {
+            dropDepth = Math.max(0, dropDepth - 1);
+        } else if (dropDepth == 0 && policy.tags.contains(name) && !HtmlDocument.isVoid(name)) {
+            builder.append("</").append(name).append('>');
+        }
+    }
+
+    @Override
+    public void text(String html, int start, int end) {
+        if (dropDepth > 0) {
+            return;
+        }
+        int amp = html.indexOf('&', start);
+        if (amp < 0 || amp >= end) {
+            escape(html, start, end, false);
+            return;
+        }
+        // decoded and escaped again, so that no markup can survive in the text
+        decoded.setLength(0);
+        HtmlTokenizer.decode(html, start, end, decoded);
+        escape(decoded, 0, decoded.length(), false);
+    }
+
+    private void escape(CharSequence value, int start, int end, boolean attribute) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                case '"':
+                    builder.append(attribute ? "&quot;" : "\"");
+                    break;
+                case '\u00A0':
+                    builder.append("&nbsp;");
+                    break;
+                default:
+                    builder.append(c);
+                    break;
+            }
+        }
+    }
+
+    private static boolean isSafe(String attribute, String value) {
+        if ("style".equals(attribute)) {
+            String style = value.toLowerCase(Locale.ENGLISH);
+            return !style.contains("url(") && !style.contains("expression(");
+        }
+        if (!URL_ATTRIBUTES.contains(attribute)) {
+            return true;
+        }
+        // control characters and whitespace are ignored by browsers when parsing the scheme
+        StringBuilder url = new StringBuilder();
+        for (int i = 0; i < value.length() && url.length() < 16; i++) {
+            char c = value.charAt(i);
+            if (c > ' ') {
+                url.append(Character.toLowerCase(c));
+            }
+        }
+        String prefix = url.toString();
+        int colon = prefix.indexOf(':');
+        if (colon < 0 || prefix.lastIndexOf('/', colon) >= 0 || prefix.lastIndexOf('?', colon) >= 0
+                || prefix.lastIndexOf('#', colon) >= 0) {
+            // relative
+            return true;
+        }
+        String scheme = prefix.substring(0, colon);
+        return "http".equals(scheme) || "https".equals(scheme) || "mailto".equals(scheme)
+                || ("src".equals(attribute) && (prefix.startsWith("data:image/") || prefix.startsWith("data:audio/")
+                || prefix.startsWith("data:video/")));
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A lenient single pass HTML tokenizer for the markup produced by the editor. It does no tree building, error
+ * recovery is left to the handler.
+ */
+final class HtmlTokenizer {
+
+    /**
+     * Receives the tokens in document order.
+     */
+    interface Handler {
+
+        /**
+         * A start tag.
+         *
+         * @param name        the lower case tag name
+         * @param attributes  the attributes as lower case name, decoded value pairs; the list is reused for the next
+         *                    tag, so copy what is needed
+         * @param selfClosing {@code true} if the tag ended with {@code />}
+         */
+        void startTag(String name, List<String> attributes, boolean selfClosing);
+
+        /**
+         * An end tag.
+         *
+         * @param name the lower case tag name
+         */
+        void endTag(String name);
+
+        /**
+         * Text between tags. The text is given as a range of the source, with character references not decoded,
+         * see {@link #decode(String, int, int, StringBuilder)}.
+         *
+         * @param html  the source
+         * @param start the start index of the text, inclusive
+         * @param end   the end index of the text, exclusive
+         */
+        void text(String html, int start, int end);
+    }
+
+    private static final String[] RAW_TEXT_ELEMENTS = {"script", "style", "textarea", "title"};
+
+    private final String html;
+    private final Handler handler;
+    private final List<String> attributes = new ArrayList<>();
+    private int position;
+
+    private HtmlTokenizer(String html, Handler handler) {
+        this.html = html;
+        this.handler = handler;
+    }
+
+    /**
+     * Tokenizes the given HTML. Comments, doctypes and processing instructions are skipped.
+     *
+     * @param html    the HTML to tokenize
+     * @param handler the handler for the tokens
+     */
+    static void tokenize(String html, Handler handler) {
+        new HtmlTokenizer(html, handler).run();
+    }
+
+    private void run() {
+        int length = html.length();
+        int textStart = 0;
+        while (position < length) {
+            int tag = html.indexOf('<', position);
+            if (tag < 0 || tag + 1 >= length) {
+                break;
+            }
+            char next = html.charAt(tag + 1);
+            boolean markup = next == '!' || next == '?' || isLetter(next)
+                    || (next == '/' && tag + 2 < length && isLetter(html.charAt(tag + 2)));
+            if (!markup) {
+                position = tag + 1;
+                continue;
+            }
+            if (tag > textStart) {
+                handler.text(html, textStart, tag);
+            }
+            position = tag + 1;
+            if (next == '!' || next == '?') {
+                skipComment();
+            } else if (next == '/') {
+                position++;
+                String name = readName();
+                skipPast('>');
+                handler.endTag(name);
+            } else {
+                readStartTag();
+            }
+            textStart = position;
+        }
+        if (textStart < length) {
+            handler.text(html, textStart, length);
+        }
+    }
+
+    private void readStartTag() {
+        String name = readName();
+        attributes.clear();
+        boolean selfClosing = false;
+        int length = html.length();
+        while (position < length) {
+            char c = html.charAt(position);
+            if (c == '>') {
+                position++;
+                break;
+            } else if (c == '/') {
+                position++;
+                selfClosing = position < length && html.charAt(position) == '>';
+            } else if (Character.isWhitespace(c)) {
+                position++;
+            } else {
+                readAttribute();
+                selfClosing = false;
+            }
+        }
+        handler.startTag(name, attributes, selfClosing);
+        for (String rawTextElement : RAW_TEXT_ELEMENTS) {
+            if (rawTextElement.equals(name)) {
+                skipRawText(name);
+                return;
+            }
+        }
+    }
+
+    private void readAttribute() {
+        int start = position;
+        int length = html.length();
+        while (position < length && !isNameEnd(html.charAt(position)) && html.charAt(position) != '=') {
+            position++;
+        }
+        if (position == start) {
+            // a stray '=', skip it
+            position++;
+            return;
+        }
+        String name = html.substring(start, position).toLowerCase(Locale.ENGLISH);
+        skipWhitespace();
+        String value = "";
+        if (position < length && html.charAt(position) == '=') {
+            position++;
+            skipWhitespace();
+            if (position < length && (html.charAt(position) == '"' || html.charAt(position) == '\'')) {
+                char quote = html.charAt(position++);
+                int end = html.indexOf(quote, position);
+                if (end < 0) {
+                    end = length;
+                }
+                value = decode(html, position, end);
+                position = Math.min(end + 1, length);
+            } else {
+                int valueStart = position;
+                while (position < length && !Character.isWhitespace(html.charAt(position))
+                        && html.charAt(position) != '>') {
+                    position++;
+                }
+                value = decode(html, valueStart, position);
+            }
+        }
+        attributes.add(name);
+        attributes.add(value);
+    }
+
+    private String readName() {
+        int start = position;
+        while (position < html.length() && !isNameEnd(html.charAt(position))) {
+            position++;
+        }
+        return html.substring(start, position).toLowerCase(Locale.ENGLISH);
+    }
+
+    private void skipComment() {
+        if (html.startsWith("!--", position)) {
+            int end = html.indexOf("-->", position + 3);
+            position = end < 0 ? html.length() : end + 3;
+        } else {
+            skipPast('>');
+        }
+    }
+
+    private void skipRawText(String name) {
+        int start = position;
+        int end = start;
+        while ((end = html.indexOf("</", end)) >= 0) {
+            if (html.regionMatches(true, end + 2, name, 0, name.length())) {
+                break;
+            }
+            end += 2;
+        }
+        if (end < 0) {
+            end = html.length();
+        }
+        if (end > start) {
+            handler.text(html, start, end);
+        }
+        position = end;
+    }
+
+    private void skipPast(char c) {
+        int end = html.indexOf(c, position);
+        position = end < 0 ? html.length() : end + 1;
+    }
+
+    private void skipWhitespace() {
+        while (position < html.length() && Character.isWhitespace(html.charAt(position))) {
+            position++;
+        }
+    }
+
+    private static boolean isNameEnd(char c) {
+        return Character.isWhitespace(c) || c == '>' || c == '/';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Decodes the character references in the given range.
+     *
+     * @param html  the source
+     * @param start the start index, inclusive
+     * @param end   the end index, exclusive
+     * @return the decoded text
+     */
+    static String decode(String html, int start, int end) {
+        int amp = html.indexOf('&', start);
+        if (amp < 0 || amp >= end) {
+            return html.substring(start, end);
+        }
+        StringBuilder builder = new StringBuilder(end - start);
+        decode(html, start, end, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Decodes the character references in the given range, appending the result to the given builder. Numeric
+     * references and the named references the editor produces are decoded, anything else is kept as is.
+     *
+     * @param html    the source
+     * @param start   the start index, inclusive
+     * @param end     the end index, exclusive
+     * @param builder the builder to append to
+     */
+    static void decode(String html, int start, int end, StringBuilder builder) {
+        int i = start;
+        while (i < end) {
+            int amp = html.indexOf('&', i);
+            if (amp < 0 || amp >= end) {
+                builder.append(html, i, end);
+                return;
+            }
+            builder.append(html, i, amp);
+            int semicolon = html.indexOf(';', amp);
+            if (semicolon < 0 || semicolon >= end || semicolon - amp > 10) {
+                builder.append('&');
+                i = amp + 1;
+                continue;
+            }
+            int codePoint = reference(html.substring(amp + 1, semicolon));
+            if (codePoint < 0) {
+                builder.append('&');
+                i = amp + 1;
+            } else {
+                builder.appendCodePoint(codePoint);
+                i = semicolon + 1;
+            }
+        }
+    }
+
+    private static int reference(String name) {
+        switch (name) {
+            case "amp":
+                return '&';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "quot":
+                return '"';
+            case "apos":
+                return '\'';
+            case "nbsp":
+                return '\u00A0';
+            default:
+                break;
+        }
+        if (name.length() < 2 || name.charAt(0) != '#') {
+            return -1;
+        }
+        try {
+            int codePoint = name.charAt(1) == 'x' || name.charAt(1) == 'X'
+                    ? Integer.parseInt(name.substring(2), 16)
+                    : Integer.parseInt(name.substring(1));
+            return Character.isValidCodePoint(codePoint) && codePoint != 0 ? codePoint : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link MediaStore} that keeps the media in memory. Nothing is ever removed, so this is meant for development and
+ * for applications where the amount of distinct media is small.
+ */
+public class InMemoryMediaStore implements MediaStore {
+
+    private final Map<String, Media> media = new ConcurrentHashMap<>();
+
+    private static class Media implements Serializable {
+        private final String mimeType;
+        private final byte[] data;
+
+        private Media(String mimeType, byte[] data) {
+            this.mimeType = mimeType;
+            this.data = data;
+        }
+    }
+
+    @Override
+    public void store(String hash, String mimeType, byte[] data) {
+        media.putIfAbsent(hash, new Media(mimeType, data));
+    }
+
+    @Override
+    public String getMimeType(String hash) {
+        Media stored = media.get(hash);
+        return stored == null ? null : stored.mimeType;
+    }
+
+    @Override
+    public InputStream read(String hash) throws FileNotFoundException {
+        Media stored = media.get(hash);
+        if (stored == null) {
+            throw new FileNotFoundException("No media stored for " + hash);
+        }
+        return new ByteArrayInputStream(stored.data);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.Serializable;
+
+import com.vaadin.flow.server.VaadinSession;
+
+/**
+ * A token bucket of the characters the editors of one session may receive, refilled at the configured rate and
+ * holding at most one second's worth. A sync is accepted only if the bucket has enough for all of it, so a single
+ * sync larger than one second's worth is never accepted. A rejected sync takes nothing from the bucket. Only used
+ * while holding the session lock.
+ * <p>
+ * The bucket is kept in the session and serialized with it. The time of the last refill is not, a
+ * {@link System#nanoTime()} value can only be compared within the same JVM; the bucket starts refilling again from the
+ * first sync after it has been deserialized.
+ */
+final class IngressLimiter implements Serializable {
+
+    private double tokens;
+    private transient long updated;
+    private transient boolean timed;
+
+    private IngressLimiter(long now, long rate) {
+        tokens = rate;
+        updated = now;
+        timed = true;
+    }
+
+    static boolean tryAcquire(VaadinSession session, long size, long rate) {
+        long now = System.nanoTime();
+        IngressLimiter limiter = session.getAttribute(IngressLimiter.class);
+        if (limiter == null) {
+            limiter = new IngressLimiter(now, rate);
+            session.setAttribute(IngressLimiter.class, limiter);
+        }
+        return limiter.tryAcquire(size, rate, now);
+    }
+
+    private boolean tryAcquire(long size, long rate, long now) {
+        if (!timed) {
+            updated = now;
+            timed = true;
+        }
+        tokens = Math.min(rate, tokens + (now - updated) / 1e9 * rate);
+        updated = now;
+        if (size > tokens) {
+            return false;
+        }
+        tokens -= size;
+        return true;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.vaadin.flow.function.SerializableFunction;
+import com.vaadin.flow.server.StreamRegistration;
+import com.vaadin.flow.server.StreamResource;
+import com.vaadin.flow.server.VaadinSession;
+
+/**
+ * Replaces base64 encoded media data URIs in an editor value with URLs to the same media in a {@link MediaStore}.
+ * <p>
+ * Only raster images, audio and video of the {@link #isMedia(String) allowed types} are moved to the store. The
+ * media is served from the same origin as the application, so a type the browser runs, like SVG with its scripts,
+ * must never be served with its own content type.
+ */
+final class MediaOffloader {
+
+    /* The media URLs end with this and the hash, which is how they are found again in stored values. */
+    static final String RESOURCE_NAME_PREFIX = "wysiwyg-e-media-";
+
+    private static final String DATA_URI = "data:";
+    private static final String BASE64 = ";base64,";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final String UNSAFE_CONTENT_TYPE = "application/octet-stream";
+    private static final Set<String> MEDIA_TYPES = new HashSet<>(Arrays.asList(
+            "image/png", "image/jpeg", "image/gif", "image/webp",
+            "audio/mpeg", "audio/mp4", "audio/aac", "audio/ogg", "audio/wav", "audio/x-wav", "audio/webm",
+            "audio/flac", "video/mp4", "video/webm", "video/ogg"));
+
+    private MediaOffloader() {
+    }
+
+    /**
+     * Moves the embedded media of the given value to the store.
+     *
+     * @param value    the value to process
+     * @param store    the store for the media
+     * @param urlForHash gives the URL to use for media with the given hash
+     * @return the value with the media replaced by URLs, or the same instance if there was nothing to replace
+     */
+    static String offload(String value, MediaStore store, SerializableFunction<String, String> urlForHash) {
+        int dataUri = value.indexOf(DATA_URI);
+        if (dataUri < 0) {
+            return value;
+        }
+        StringBuilder builder = null;
+        int copied = 0;
+        for (; dataUri >= 0; dataUri = value.indexOf(DATA_URI, dataUri + DATA_URI.length())) {
+            if (dataUri == 0 || "\"'(".indexOf(value.charAt(dataUri - 1)) < 0) {
+                continue;
+            }
+            int base64 = value.indexOf(BASE64, dataUri);
+            int mimeStart = dataUri + DATA_URI.length();
+            if (base64 < 0 || value.indexOf(';', mimeStart) != base64) {
+                continue;
+            }
+            String mimeType = value.substring(mimeStart, base64).toLowerCase(Locale.ENGLISH);
+            if (!isMedia(mimeType)) {
+                continue;
+            }
+            int dataStart = base64 + BASE64.length();
+            int dataEnd = dataStart;
+            while (dataEnd < value.length() && isBase64(value.charAt(dataEnd))) {
+                dataEnd++;
+            }
+            byte[] data;
+            try {
+                data = Base64.getDecoder().decode(value.substring(dataStart, dataEnd));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            String hash = hash(data);
+            try {
+                store.store(hash, mimeType, data);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Storing media " + hash + " failed", e);
+            }
+            if (builder == null) {
+                builder = new StringBuilder(value.length());
+            }
+            builder.append(value, copied, dataUri).append(urlForHash.apply(hash));
+            copied = dataEnd;
+            dataUri = dataEnd - DATA_URI.length();
+        }
+        if (builder == null) {
+            return value;
+        }
+        return builder.append(value, copied, value.length()).toString();
+    }
+
+    /**
+     * Replaces media URLs in the given value with the URLs for the current session, e.g. for values from a database
+     * that have been stored in another session.
+     *
+     * @param value      the value to process
+     * @param urlForHash gives the URL to use for media with the given hash
+     * @return the value with current URLs, or the same instance if there were no media URLs
+     */
+    static String relink(String value, SerializableFunction<String, String> urlForHash) {
+        StringBuilder builder = null;
+        int copied = 0;
+        // the URL runs back from the prefix to a quote, a parenthesis or whitespace; each character is looked at once
+        int scanned = 0;
+        int urlStart = 0;
+        int index = value.indexOf(RESOURCE_NAME_PREFIX);
+        while (index >= 0) {
+            for (int i = index - 1; i >= scanned; i--) {
+                if (isUrlDelimiter(value.charAt(i))) {
+                    urlStart = i + 1;
+                    break;
+                }
+            }
+            scanned = index;
+            int hashStart = index + RESOURCE_NAME_PREFIX.length();
+            int hashEnd = hashStart + 64;
+            if (!isHash(value, hashStart, hashEnd)) {
+                index = value.indexOf(RESOURCE_NAME_PREFIX, index + 1);
+                continue;
+            }
+            if (builder == null) {
+                builder = new StringBuilder(value.length());
+            }
+            builder.append(value, copied, urlStart).append(urlForHash.apply(value.substring(hashStart, hashEnd)));
+            copied = hashEnd;
+            scanned = hashEnd;
+            urlStart = hashEnd;
+            index = value.indexOf(RESOURCE_NAME_PREFIX, hashEnd);
+        }
+        if (builder == null) {
+            return value;
+        }
+        return builder.append(value, copied, value.length()).toString();
+    }
+
+    private static boolean isUrlDelimiter(char c) {
+        return c == '"' || c == '\'' || c == '(' || c == ')' || c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    private static boolean isHash(String value, int start, int end) {
+        if (end > value.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the URL of the stream resource for the given media in the given session. Each media is registered once per
+     * session, regardless of the number of editors showing it.
+     *
+     * @param session the session to register the resource in
+     * @param store   the store to serve the media from
+     * @param hash    the hash of the media
+     * @return the URL of the media
+     */
+    static String getResourceUrl(VaadinSession session, MediaStore store, String hash) {
+        SessionResources resources = session.getAttribute(SessionResources.class);
+        if (resources == null) {
+            resources = new SessionResources();
+            session.setAttribute(SessionResources.class, resources);
+        }
+        return resources.urls.computeIfAbsent(hash, key -> {
+            StreamResource resource = new StreamResource(RESOURCE_NAME_PREFIX + key, () -> {
+                try {
+                    return store.read(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            try {
+                // the store may have media stored by other means, anything else is only offered as a download
+                String mimeType = store.getMimeType(key);
+                resource.setContentType(mimeType != null && isMedia(mimeType) ? mimeType : UNSAFE_CONTENT_TYPE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            StreamRegistration registration = session.getResourceRegistry().registerResource(resource);
+            return registration.getResourceUri().toString();
+        });
+    }
+
+    static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks whether the given type is media that is moved to the store and served with its own content type.
+     *
+     * @param mimeType the lower case MIME type
+     * @return {@code true} for the allowed raster image, audio and video types
+     */
+    static boolean isMedia(String mimeType) {
+        return MEDIA_TYPES.contains(mimeType);
+    }
+
+    private static boolean isBase64(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                || c == '+' || c == '/' || c == '=';
+    }
+
+    private static class SessionResources implements Serializable {
+        private final Map<String, String> urls = new HashMap<>();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+
+/**
+ * Storage for media that {@link WysiwygE} has extracted from its value, see {@link WysiwygE#setMediaStore(MediaStore)}.
+ * <p>
+ * Media is keyed by the hex encoded SHA-256 hash of its content, so the same image pasted into several editors is
+ * stored only once. To share media between editors and sessions, use the same store instance for all of them.
+ * Implementations need to be thread safe.
+ *
+ * @see InMemoryMediaStore
+ * @see FileMediaStore
+ */
+public interface MediaStore extends Serializable {
+
+    /**
+     * Stores the given media, unless media with the same hash has already been stored.
+     *
+     * @param hash     the SHA-256 hash of the data as a lower case hex string
+     * @param mimeType the mime type of the media, e.g. {@code image/png}
+     * @param data     the media content
+     * @throws IOException if storing fails
+     */
+    void store(String hash, String mimeType, byte[] data) throws IOException;
+
+    /**
+     * Gets the mime type of the stored media.
+     *
+     * @param hash the hash of the media
+     * @return the mime type, or {@code null} if no media with the given hash is stored
+     * @throws IOException if reading fails
+     */
+    String getMimeType(String hash) throws IOException;
+
+    /**
+     * Opens the content of the stored media for reading. The caller closes the stream.
+     *
+     * @param hash the hash of the media
+     * @return a stream for the content
+     * @throws IOException if the media is not stored or reading fails
+     */
+    InputStream read(String hash) throws IOException;
+}
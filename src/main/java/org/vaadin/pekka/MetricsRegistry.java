@@ -0,0 +1,81 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+/**
+ * Receives runtime measurements from all {@link WysiwygE} instances in the JVM, see
+ * {@link WysiwygE#setMetricsRegistry(MetricsRegistry)}. The editor is passed with each measurement so that
+ * implementations can also track individual editors, e.g. the ones with huge documents.
+ * <p>
+ * Implementations are called while the session of the editor is locked, from many sessions concurrently, so they
+ * need to be thread safe and fast.
+ *
+ * @see SimpleMetricsRegistry
+ */
+@FunctionalInterface
+public interface MetricsRegistry {
+
+    /**
+     * A registry that ignores all measurements. This is the default.
+     */
+    MetricsRegistry NO_OP = (editor, metric, value) -> {
+    };
+
+    /**
+     * The measured things.
+     */
+    enum Metric {
+        /**
+         * A counter of value synchronizations received from the client, recorded with value {@code 1}.
+         */
+        SYNC_ROUND_TRIPS,
+        /**
+         * A histogram of the characters received per value synchronization, the whole value or the changed part
+         * with {@link WysiwygE.ValueSyncMode#DELTA}. For mostly ASCII markup this is about the bytes received.
+         */
+        SYNC_RECEIVED_SIZE,
+        /**
+         * A histogram of the value length in characters, recorded when the value changes.
+         */
+        DOCUMENT_SIZE,
+        /**
+         * A histogram of the time in nanoseconds spent in the value change listeners per value change.
+         */
+        LISTENER_LATENCY,
+        /**
+         * A counter of JavaScript invocations sent for content editable updates, undo and redo, recorded with value
+         * {@code 1}.
+         */
+        JS_CALLS;
+    }
+
+    /**
+     * Records a measurement.
+     *
+     * @param editor the editor the measurement is for
+     * @param metric the measured thing
+     * @param value  the measured value, {@code 1} for counters
+     */
+    void record(WysiwygE editor, Metric metric, long value);
+}
@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+
+/**
+ * The editors of one UI with values pushed by {@link WysiwygE#pushValue(String)} waiting to be set. They are all
+ * set in one {@link UI#access(com.vaadin.flow.server.Command)}, so the session is locked and the changes are
+ * pushed once for the whole batch.
+ */
+final class PushBatch {
+
+    /* Weak keys, a batch doesn't refer to its UI outside of a scheduled flush. */
+    private static final Map<UI, PushBatch> BATCHES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Queue<WysiwygE> editors = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile long lastFlush;
+
+    private PushBatch() {
+    }
+
+    /**
+     * Adds the editor to the next batch of its UI. The batch is flushed when the given interval has passed since
+     * the previous one.
+     *
+     * @param ui       the UI of the editor
+     * @param editor   the editor with a pushed value
+     * @param interval the shortest time between batches in milliseconds
+     */
+    static void add(UI ui, WysiwygE editor, long interval) {
+        PushBatch batch = BATCHES.computeIfAbsent(ui, key -> new PushBatch());
+        batch.editors.add(editor);
+        if (batch.scheduled.compareAndSet(false, true)) {
+            long delay = Math.max(0, batch.lastFlush + interval - System.currentTimeMillis());
+            DefaultScheduler.INSTANCE.schedule(() -> batch.flush(ui), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(UI ui) {
+        scheduled.set(false);
+        lastFlush = System.currentTimeMillis();
+        try {
+            ui.access(() -> {
+                WysiwygE editor;
+                while ((editor = editors.poll()) != null) {
+                    editor.applyPushedValue(ui);
+                }
+            });
+        } catch (UIDetachedException e) {
+            // the editors apply their values when attached again
+            editors.clear();
+            BATCHES.remove(ui);
+        }
+    }
+
+    private static final class DefaultScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wysiwyg-e-push");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private DefaultScheduler() {
+        }
+    }
+}
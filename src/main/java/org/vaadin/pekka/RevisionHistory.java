@@ -0,0 +1,232 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.Serializable;
+
+/**
+ * The revisions of a value, limited by their estimated memory use instead of their count. Most revisions are kept
+ * as the edit from the previous revision, with a full snapshot every now and then so that a revision is never
+ * more than a few edits away from one. The oldest revisions are dropped when over the limit; the oldest kept one
+ * is always a snapshot.
+ * <p>
+ * Revisions are numbered from 0, the value the history was created with. One revision is the current one, the
+ * revisions after it are dropped when a new one is added.
+ */
+final class RevisionHistory implements Serializable {
+
+    /* The most edits in a row between snapshots. */
+    private static final int MAX_CHAIN = 32;
+    /* An estimate of the memory use of an entry in addition to its characters. */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private Entry[] entries = new Entry[16];
+    /* The index of the oldest entry in the ring. */
+    private int head;
+    private int size;
+    private long oldest;
+    private long current;
+    /* The value of the current revision, the same instance as the value of the editor. */
+    private String value;
+    /* The current revision has been dropped, the next revision can't be based on it. */
+    private boolean currentDropped;
+    private long bytes;
+    private long limit;
+    /* The edits added since the last snapshot, and their size. */
+    private int chain;
+    private long chainBytes;
+
+    RevisionHistory(String value, long limit) {
+        this.limit = limit;
+        this.value = value;
+        add(new Entry(value, null));
+    }
+
+    long getOldest() {
+        return oldest;
+    }
+
+    long getLatest() {
+        return oldest + size - 1;
+    }
+
+    long getCurrent() {
+        return current;
+    }
+
+    /**
+     * Makes the given revision the current one.
+     *
+     * @param revision the revision, between the oldest and the latest
+     * @return the value of the revision
+     */
+    String moveTo(long revision) {
+        value = get(revision);
+        current = revision;
+        currentDropped = false;
+        return value;
+    }
+
+    long getLimit() {
+        return limit;
+    }
+
+    void setLimit(long limit) {
+        this.limit = limit;
+        trim();
+    }
+
+    /**
+     * Adds a revision after the current one, dropping the revisions after the current one.
+     *
+     * @param newValue the value of the new revision
+     */
+    void add(String newValue) {
+        TextEdit edit = TextEdit.diff(value, newValue);
+        if (edit == null) {
+            return;
+        }
+        while (getLatest() > current) {
+            removeLatest();
+        }
+        value = newValue;
+        if (currentDropped || chain >= MAX_CHAIN || chainBytes + size(edit.getText()) > size(newValue)) {
+            // also when replaying the edits would take longer than copying the value
+            add(new Entry(newValue, null));
+        } else {
+            add(new Entry(null, edit));
+        }
+        current = getLatest();
+        currentDropped = false;
+        trim();
+    }
+
+    /**
+     * Gets the value of the given revision.
+     *
+     * @param revision the revision, between the oldest and the latest
+     * @return the value
+     */
+    String get(long revision) {
+        checkRevision(revision);
+        int index = (int) (revision - oldest);
+        int snapshot = index;
+        while (entry(snapshot).snapshot == null) {
+            snapshot--;
+        }
+        String result = entry(snapshot).snapshot;
+        for (int i = snapshot + 1; i <= index; i++) {
+            result = entry(i).edit.apply(result);
+        }
+        return result;
+    }
+
+    private void checkRevision(long revision) {
+        if (revision < oldest || revision > getLatest()) {
+            throw new IllegalArgumentException("Revision " + revision + " is not in the history, the revisions are "
+                    + oldest + " to " + getLatest());
+        }
+    }
+
+    private Entry entry(int index) {
+        return entries[(head + index) % entries.length];
+    }
+
+    private void add(Entry entry) {
+        if (size == entries.length) {
+            Entry[] grown = new Entry[size * 2];
+            for (int i = 0; i < size; i++) {
+                grown[i] = entry(i);
+            }
+            entries = grown;
+            head = 0;
+        }
+        entries[(head + size) % entries.length] = entry;
+        size++;
+        bytes += entry.bytes;
+        if (entry.snapshot != null) {
+            chain = 0;
+            chainBytes = 0;
+        } else {
+            chain++;
+            chainBytes += entry.bytes;
+        }
+    }
+
+    private void removeLatest() {
+        int index = (head + size - 1) % entries.length;
+        bytes -= entries[index].bytes;
+        entries[index] = null;
+        size--;
+        // recounted, the chain is at most MAX_CHAIN long
+        chain = 0;
+        chainBytes = 0;
+        for (int i = size - 1; i >= 0 && entry(i).snapshot == null; i--) {
+            chain++;
+            chainBytes += entry(i).bytes;
+        }
+    }
+
+    private void trim() {
+        // the latest revision is kept even if it's over the limit alone
+        while (bytes > limit && size > 1) {
+            Entry removed = entries[head];
+            Entry next = entry(1);
+            if (next.snapshot == null) {
+                entries[(head + 1) % entries.length] = new Entry(next.edit.apply(removed.snapshot), null);
+                bytes += entry(1).bytes - next.bytes;
+                if (chain == size - 1) {
+                    // the edits after the new snapshot are the ones since it now
+                    chain--;
+                    chainBytes -= next.bytes;
+                }
+            }
+            entries[head] = null;
+            head = (head + 1) % entries.length;
+            size--;
+            bytes -= removed.bytes;
+            oldest++;
+        }
+        if (current < oldest) {
+            current = oldest;
+            currentDropped = true;
+        }
+    }
+
+    private static long size(String text) {
+        return ENTRY_OVERHEAD + 2L * text.length();
+    }
+
+    private static final class Entry implements Serializable {
+        private final String snapshot;
+        private final TextEdit edit;
+        private final long bytes;
+
+        private Entry(String snapshot, TextEdit edit) {
+            this.snapshot = snapshot;
+            this.edit = edit;
+            bytes = size(snapshot != null ? snapshot : edit.getText());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link MetricsRegistry} that aggregates the count, sum and maximum of each metric over all editors in the JVM,
+ * and a histogram of the measurements in fixed power of two buckets, so that the distribution of e.g. latencies
+ * and sizes can be exported as well. The values can be polled and exported to any monitoring system. Recording
+ * doesn't block and doesn't allocate.
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    /**
+     * The number of histogram buckets. Bucket {@code 0} counts the measurements {@code <= 0}, bucket {@code i}
+     * the measurements from {@code 2^(i-1)} to {@code 2^i - 1}.
+     */
+    public static final int BUCKET_COUNT = 64;
+
+    private final Map<Metric, Aggregate> aggregates = new EnumMap<>(Metric.class);
+
+    private static class Aggregate {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    /**
+     * Creates a registry with all metrics at zero.
+     */
+    public SimpleMetricsRegistry() {
+        for (Metric metric : Metric.values()) {
+            aggregates.put(metric, new Aggregate());
+        }
+    }
+
+    @Override
+    public void record(WysiwygE editor, Metric metric, long value) {
+        Aggregate aggregate = aggregates.get(metric);
+        aggregate.count.increment();
+        aggregate.sum.add(value);
+        aggregate.max.accumulate(value);
+        aggregate.buckets.incrementAndGet(getBucket(value));
+    }
+
+    /**
+     * Gets the histogram bucket of the given measurement.
+     *
+     * @param value the measurement
+     * @return the index of the bucket, from {@code 0} to {@code BUCKET_COUNT - 1}
+     */
+    public static int getBucket(long value) {
+        return value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Gets the largest measurement counted in the given histogram bucket.
+     *
+     * @param bucket the index of the bucket, from {@code 0} to {@code BUCKET_COUNT - 1}
+     * @return the inclusive upper bound of the bucket
+     */
+    public static long getBucketUpperBound(int bucket) {
+        if (bucket < 0 || bucket >= BUCKET_COUNT) {
+            throw new IllegalArgumentException("Bucket must be from 0 to " + (BUCKET_COUNT - 1) + ": " + bucket);
+        }
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+
+    /**
+     * Gets the histogram of the given metric.
+     *
+     * @param metric the metric
+     * @return a new array of the number of measurements per bucket, indexed as described in {@link #BUCKET_COUNT}
+     */
+    public long[] getHistogram(Metric metric) {
+        AtomicLongArray buckets = aggregates.get(metric).buckets;
+        long[] histogram = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            histogram[i] = buckets.get(i);
+        }
+        return histogram;
+    }
+
+    /**
+     * Gets an estimate of the given percentile of the measurements of the given metric, the upper bound of the
+     * histogram bucket the percentile falls into. The estimate is at most twice the actual value.
+     *
+     * @param metric     the metric
+     * @param percentile the percentile, from {@code 0} to {@code 100}
+     * @return the estimate, or {@code 0} if there are no measurements
+     */
+    public long getPercentile(Metric metric, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be from 0 to 100: " + percentile);
+        }
+        long[] histogram = getHistogram(metric);
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += histogram[i];
+            if (histogram[i] > 0 && seen >= rank) {
+                return Math.min(getBucketUpperBound(i), getMax(metric));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the number of measurements of the given metric.
+     *
+     * @param metric the metric
+     * @return the number of measurements
+     */
+    public long getCount(Metric metric) {
+        return aggregates.get(metric).count.sum();
+    }
+
+    /**
+     * Gets the sum of the measurements of the given metric.
+     *
+     * @param metric the metric
+     * @return the sum of the measurements
+     */
+    public long getSum(Metric metric) {
+        return aggregates.get(metric).sum.sum();
+    }
+
+    /**
+     * Gets the largest measurement of the given metric.
+     *
+     * @param metric the metric
+     * @return the largest measurement, or {@code 0} if there are none
+     */
+    public long getMax(Metric metric) {
+        return getCount(metric) == 0 ? 0 : aggregates.get(metric).max.get();
+    }
+
+    /**
+     * Gets the mean of the measurements of the given metric.
+     *
+     * @param metric the metric
+     * @return the mean, or {@code 0} if there are no measurements
+     */
+    public double getMean(Metric metric) {
+        long count = getCount(metric);
+        return count == 0 ? 0 : (double) getSum(metric) / count;
+    }
+
+    /**
+     * Resets all metrics to zero, e.g. after exporting them.
+     */
+    public void reset() {
+        aggregates.values().forEach(aggregate -> {
+            aggregate.count.reset();
+            aggregate.sum.reset();
+            aggregate.max.reset();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                aggregate.buckets.set(i, 0);
+            }
+        });
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.Serializable;
+
+/**
+ * A replacement of a single range of a string, the unit of change of the value.
+ */
+final class TextEdit implements Serializable {
+
+    private final int offset;
+    private final int length;
+    private final String text;
+
+    TextEdit(int offset, int length, String text) {
+        this.offset = offset;
+        this.length = length;
+        this.text = text;
+    }
+
+    /**
+     * Returns the edit replacing the range between the common prefix and suffix of the two values, or
+     * {@code null} if the values are equal.
+     */
+    static TextEdit diff(String oldValue, String newValue) {
+        if (oldValue.equals(newValue)) {
+            return null;
+        }
+        int max = Math.min(oldValue.length(), newValue.length());
+        int start = 0;
+        while (start < max && oldValue.charAt(start) == newValue.charAt(start)) {
+            start++;
+        }
+        int oldEnd = oldValue.length();
+        int newEnd = newValue.length();
+        while (oldEnd > start && newEnd > start && oldValue.charAt(oldEnd - 1) == newValue.charAt(newEnd - 1)) {
+            oldEnd--;
+            newEnd--;
+        }
+        return new TextEdit(start, oldEnd - start, newValue.substring(start, newEnd));
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    int getEnd() {
+        return offset + length;
+    }
+
+    String apply(String value) {
+        return value.substring(0, offset) + text + value.substring(getEnd());
+    }
+
+    /**
+     * Returns this edit as it applies after the given concurrent edit has been applied, with the applied edit coming
+     * first of the two. Same as {@code transform(applied, true)}.
+     */
+    TextEdit transform(TextEdit applied) {
+        return transform(applied, true);
+    }
+
+    /**
+     * Returns this edit as it applies after the given concurrent edit has been applied. Of two inserts at the same
+     * offset, the one coming first stays first, and of two replacements of the same range the one coming second is
+     * kept. Where the ranges overlap, the part of this edit's range that the other edit already replaced is left as
+     * the other edit made it, and an edit covered completely by the other one is dropped. Transforming two edits
+     * against each other, with the opposite order, gives the same result whichever is applied first.
+     *
+     * @param applied      the concurrent edit that has been applied
+     * @param appliedFirst whether the applied edit comes first of the two
+     */
+    TextEdit transform(TextEdit applied, boolean appliedFirst) {
+        if (isEmpty() || applied.isEmpty()) {
+            return this;
+        }
+        int delta = applied.text.length() - applied.length;
+        int appliedTextEnd = applied.offset + applied.text.length();
+        if (offset == applied.offset && getEnd() == applied.getEnd()) {
+            if (length == 0) {
+                return appliedFirst ? new TextEdit(appliedTextEnd, 0, text) : this;
+            }
+            return appliedFirst ? new TextEdit(offset, applied.text.length(), text) : dropped(applied);
+        }
+        if (getEnd() <= applied.offset) {
+            return this;
+        }
+        if (offset >= applied.getEnd()) {
+            return new TextEdit(offset + delta, length, text);
+        }
+        if (offset >= applied.offset && getEnd() <= applied.getEnd()) {
+            return dropped(applied);
+        }
+        if (offset <= applied.offset && getEnd() >= applied.getEnd()) {
+            return new TextEdit(offset, length + delta, text);
+        }
+        if (offset < applied.offset) {
+            return new TextEdit(offset, applied.offset - offset, text);
+        }
+        return new TextEdit(appliedTextEnd, getEnd() - applied.getEnd(), text);
+    }
+
+    private boolean isEmpty() {
+        return length == 0 && text.isEmpty();
+    }
+
+    private static TextEdit dropped(TextEdit applied) {
+        return new TextEdit(applied.offset, 0, "");
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import java.io.Serializable;
+
+/**
+ * The part of the value of a {@link WysiwygE} that changed in one value change, both as a range of the HTML and as
+ * a range of its plain text. Consumers like search indexes can use it to update only what changed.
+ * <p>
+ * The ranges are computed on first use and then shared by all the listeners of the change. A change sent as a
+ * delta by the client, see {@link WysiwygE.ValueSyncMode#DELTA}, has its HTML range without any computation.
+ *
+ * @see WysiwygE#getChangeRange(com.vaadin.flow.component.AbstractField.ComponentValueChangeEvent)
+ * @see AsyncValueChangeEvent#getChangeRange()
+ */
+public final class ValueChangeRange implements Serializable {
+
+    private static final TextEdit NO_EDIT = new TextEdit(0, 0, "");
+
+    private final String oldValue;
+    private final String newValue;
+    private final HtmlDocument oldDocument;
+    private final HtmlDocument newDocument;
+
+    private TextEdit htmlEdit;
+    private TextEdit textEdit;
+
+    /*
+     * The documents are the ones the editor has already parsed for the values, or null to parse the values when the
+     * text range is needed.
+     */
+    ValueChangeRange(String oldValue, String newValue, TextEdit htmlEdit, HtmlDocument oldDocument,
+            HtmlDocument newDocument) {
+        this.oldValue = oldValue == null ? "" : oldValue;
+        this.newValue = newValue == null ? "" : newValue;
+        this.htmlEdit = htmlEdit;
+        this.oldDocument = oldDocument;
+        this.newDocument = newDocument;
+    }
+
+    boolean isFor(String oldValue, String newValue) {
+        // identity is enough, the values of the event are the ones the range was created for
+        return this.oldValue == (oldValue == null ? "" : oldValue) && this.newValue == (newValue == null ? "" : newValue);
+    }
+
+    /**
+     * Gets the offset of the change in the old HTML value. The same offset in the new value is where the inserted
+     * HTML starts.
+     *
+     * @return the offset of the change in the HTML
+     */
+    public int getHtmlOffset() {
+        return htmlEdit().getOffset();
+    }
+
+    /**
+     * Gets the number of characters of the old HTML value, starting from {@link #getHtmlOffset()}, that were
+     * replaced.
+     *
+     * @return the length of the replaced HTML
+     */
+    public int getRemovedHtmlLength() {
+        return htmlEdit().getLength();
+    }
+
+    /**
+     * Gets the HTML that replaced the removed part.
+     *
+     * @return the inserted HTML, empty if only removed
+     */
+    public String getInsertedHtml() {
+        return htmlEdit().getText();
+    }
+
+    /**
+     * Gets the offset of the change in the plain text of the old value.
+     *
+     * @return the offset of the change in the text
+     * @see HtmlDocument#getText()
+     */
+    public int getTextOffset() {
+        return textEdit().getOffset();
+    }
+
+    /**
+     * Gets the number of characters of the plain text of the old value, starting from {@link #getTextOffset()},
+     * that were replaced.
+     *
+     * @return the length of the replaced text
+     */
+    public int getRemovedTextLength() {
+        return textEdit().getLength();
+    }
+
+    /**
+     * Gets the plain text that replaced the removed part.
+     *
+     * @return the inserted text, empty if only removed
+     */
+    public String getInsertedText() {
+        return textEdit().getText();
+    }
+
+    /**
+     * Returns whether the plain text changed, a change of formatting only changes the HTML.
+     *
+     * @return {@code true} if the text changed
+     */
+    public boolean isTextChanged() {
+        TextEdit edit = textEdit();
+        return edit.getLength() > 0 || !edit.getText().isEmpty();
+    }
+
+    private synchronized TextEdit htmlEdit() {
+        if (htmlEdit == null) {
+            htmlEdit = diff(oldValue, newValue);
+        }
+        return htmlEdit;
+    }
+
+    private synchronized TextEdit textEdit() {
+        if (textEdit == null) {
+            HtmlDocument oldParsed = oldDocument == null ? HtmlDocument.parse(oldValue) : oldDocument;
+            HtmlDocument newParsed = newDocument == null ? HtmlDocument.parse(newValue) : newDocument;
+            textEdit = diff(oldParsed.getText(), newParsed.getText());
+        }
+        return textEdit;
+    }
+
+    private static TextEdit diff(String oldValue, String newValue) {
+        TextEdit edit = TextEdit.diff(oldValue, newValue);
+        return edit == null ? NO_EDIT : edit;
+    }
+}
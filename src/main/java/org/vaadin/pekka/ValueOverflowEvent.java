@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka;
+
+import com.vaadin.flow.component.ComponentEvent;
+
+/**
+ * Fired when a value sent by the browser is rejected by the limits of the editor, see
+ * {@link WysiwygE#setMaxValueLength(int)} and {@link WysiwygE#setMaxIngressRate(long)}. The value of the editor
+ * stays at the last accepted value.
+ */
+public class ValueOverflowEvent extends ComponentEvent<WysiwygE> {
+
+    /**
+     * Why the value was rejected.
+     */
+    public enum Reason {
+        /**
+         * The value is longer than the maximum value length.
+         */
+        MAX_LENGTH,
+        /**
+         * The session has sent more than the maximum ingress rate allows.
+         */
+        RATE;
+    }
+
+    private final Reason reason;
+    private final long size;
+
+    /**
+     * Creates a new event.
+     *
+     * @param source the editor that rejected the value
+     * @param reason why the value was rejected
+     * @param size   the length of the rejected value, or of the rejected part for delta sync
+     */
+    public ValueOverflowEvent(WysiwygE source, Reason reason, long size) {
+        super(source, true);
+        this.reason = reason;
+        this.size = size;
+    }
+
+    /**
+     * Gets why the value was rejected.
+     *
+     * @return the reason
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Gets the length of the rejected value in characters, or of the rejected part with
+     * {@link WysiwygE.ValueSyncMode#DELTA}.
+     *
+     * @return the rejected length
+     */
+    public long getSize() {
+        return size;
+    }
+}
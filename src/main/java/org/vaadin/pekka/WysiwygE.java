@@ -23,27 +23,53 @@
  */
 package org.vaadin.pekka;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.vaadin.flow.component.AbstractField.ComponentValueChangeEvent;
 import com.vaadin.flow.component.AbstractSinglePropertyField;
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.ComponentEventListener;
 import com.vaadin.flow.component.CompositionNotifier;
 import com.vaadin.flow.component.HasSize;
 import com.vaadin.flow.component.HasStyle;
+import com.vaadin.flow.component.HasValidation;
 import com.vaadin.flow.component.InputNotifier;
 import com.vaadin.flow.component.KeyNotifier;
 import com.vaadin.flow.component.Tag;
 import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.dependency.JsModule;
 import com.vaadin.flow.component.dependency.NpmPackage;
+import com.vaadin.flow.data.binder.ValidationResult;
+import com.vaadin.flow.data.binder.Validator;
 import com.vaadin.flow.data.value.HasValueChangeMode;
 import com.vaadin.flow.data.value.ValueChangeMode;
+import com.vaadin.flow.dom.DomEvent;
+import com.vaadin.flow.dom.DomListenerRegistration;
 import com.vaadin.flow.dom.Element;
-import com.vaadin.flow.function.SerializableConsumer;
+import com.vaadin.flow.internal.nodefeature.ElementPropertyMap;
+import com.vaadin.flow.server.VaadinSession;
 import com.vaadin.flow.shared.Registration;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonType;
+import elemental.json.JsonValue;
 
 /**
  * A rich text editor that wraps the <a href="https://github.com/miztroh/wysiwyg-e">wysiwyg-e web component</a>.
@@ -56,38 +82,39 @@ import com.vaadin.flow.shared.Registration;
  * By default the value is updated to the server 400 ms after the user has stopped typing.
  * The value update cadence can be controlled with {@link #setValueChangeMode(ValueChangeMode)}
  * and {@link #setValueChangeTimeout(int)}.
+ * <p>
+ * For large documents, {@link #setValueSyncMode(ValueSyncMode)} can be used to only send the edited parts of the
+ * value to the server instead of the whole document.
+ * <p>
+ * The modules of the web component and the tools are not part of the initial bundle. The web component and the
+ * visible tools are imported when the editor is attached, and the module for any other tool the first time it is
+ * set visible.
+ * <p>
+ * Read-only editors in lists and grids can be shown as static HTML without the web component, and editors in long
+ * forms activated only when the user gets to them, see {@link #setRenderMode(RenderMode)}.
  */
 @Tag("wysiwyg-e")
 @NpmPackage(value = "wysiwyg-e-fork", version = "3.0.10")
-@JsModule("wysiwyg-e-fork/wysiwyg-e.js")
-@JsModule("wysiwyg-e-fork/tools/audio.js")
-@JsModule("wysiwyg-e-fork/tools/blockquote.js")
-@JsModule("wysiwyg-e-fork/tools/bold.js")
-@JsModule("wysiwyg-e-fork/tools/clear.js")
-@JsModule("wysiwyg-e-fork/tools/code.js")
-@JsModule("wysiwyg-e-fork/tools/color.js")
-@JsModule("wysiwyg-e-fork/tools/heading.js")
-@JsModule("wysiwyg-e-fork/tools/image.js")
-@JsModule("wysiwyg-e-fork/tools/indent.js")
-@JsModule("wysiwyg-e-fork/tools/italic.js")
-@JsModule("wysiwyg-e-fork/tools/justify.js")
-@JsModule("wysiwyg-e-fork/tools/link.js")
-@JsModule("wysiwyg-e-fork/tools/ordered.js")
-@JsModule("wysiwyg-e-fork/tools/outdent.js")
-@JsModule("wysiwyg-e-fork/tools/strike.js")
-@JsModule("wysiwyg-e-fork/tools/table.js")
-@JsModule("wysiwyg-e-fork/tools/underline.js")
-@JsModule("wysiwyg-e-fork/tools/unordered.js")
-@JsModule("wysiwyg-e-fork/tools/video.js")
+@JsModule("./wysiwyg-e-connector.js")
 public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> implements HasSize, HasStyle,
-        HasValueChangeMode, InputNotifier, KeyNotifier, CompositionNotifier {
+        HasValueChangeMode, HasValidation, InputNotifier, KeyNotifier, CompositionNotifier {
+
+    /**
+     * The default shortest time in milliseconds between setting values pushed with {@link #pushValue(String)}.
+     */
+    public static final int DEFAULT_PUSH_INTERVAL = 100;
+
+    private static final String CONNECTOR = "window.Vaadin.Flow.wysiwygEConnector.";
+
+    private static final int TOOL_COUNT = Tool.values().length;
 
-    private static final String CONTENT_EDITABLE_EXECUTION =
-            "this.$['editable'].contentEditable = $0;" +
-                    "this.$['toolbar'].hidden = $1;";
+    private static final String COMPACT_TOOLBAR_PROPERTY = "compactToolbar";
 
-    private Registration detachListenerRegistration;
-    private SerializableConsumer<UI> command;
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    private static final String TOOL_TAG_PREFIX = "wysiwyg-tool-";
+
+    private static volatile MetricsRegistry metricsRegistry = MetricsRegistry.NO_OP;
 
     public enum Tool {
         BOLD, UNDERLINE, STRIKE, COLOR, CLEAR, CODE, LINK, IMAGE, AUDIO,
@@ -95,13 +122,144 @@ public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> impl
         UNORDERED, ITALIC, TABLE;
     }
 
+    /**
+     * How the toolbar is represented in the server side state.
+     */
+    public enum ToolbarMode {
+        /**
+         * Each tool is a child element of the editor. This is the default, and required for customizing the tool
+         * elements by overriding {@link #initToolbar()}. The tool elements are part of the state tree shared with
+         * the client, so they are serialized with the session.
+         */
+        ELEMENTS,
+        /**
+         * The visible tools are a single property of the editor, the tool elements are created on the client side.
+         */
+        COMPACT;
+    }
+
+    /**
+     * When the editor is shown as static HTML instead of the editor web component.
+     */
+    public enum RenderMode {
+        /**
+         * Always the editor web component. This is the default.
+         */
+        EDITOR,
+        /**
+         * Sanitized static HTML while the editor is read-only or disabled, the web component only while editable.
+         */
+        STATIC,
+        /**
+         * Like {@link #STATIC}, and also static HTML while editable until the editor is focused, clicked or
+         * scrolled into view for the first time.
+         */
+        LAZY;
+    }
+
+    /**
+     * How two values are compared to decide whether the value has changed.
+     */
+    public enum ValueEquality {
+        /**
+         * Any difference in the HTML is a change. This is the default.
+         */
+        EXACT,
+        /**
+         * Only differences that show to the user are a change. Collapsible whitespace, the order of attributes
+         * and style declarations, spans without attributes, empty inline elements and the single placeholder
+         * {@code <br>} at the end of a block are ignored.
+         */
+        CANONICAL;
+    }
+
+    /**
+     * How the value is sent from the client to the server.
+     */
+    public enum ValueSyncMode {
+        /**
+         * The whole value is sent on every synchronization. This is the default.
+         */
+        FULL,
+        /**
+         * Only the changed part of the value is sent and applied to the server side copy. A checksum of the
+         * whole value is sent periodically and the whole value is requested again if the copies have drifted.
+         */
+        DELTA;
+    }
+
     /* The same as in TextField */
     private int valueChangeTimeout = 400;
 
     private boolean previousContentEditable = true;
+    /* Whether the web component has been requested for the current attach. */
+    private boolean activated;
+    private boolean contentEditablePending;
+    private JsonArray pendingCommands;
+    private boolean commandsScheduled;
 
     private ValueChangeMode currentMode;
 
+    private AdaptiveValueChangeTimeout adaptiveTimeout;
+    private long lastClientSync;
+    private double averageSyncInterval;
+
+    /* Derived from the child elements, built by toolElements() when first used and after deserialization. */
+    private transient EnumMap<Tool, Element> toolElements;
+    private final EnumSet<Tool> visibleTools = EnumSet.noneOf(Tool.class);
+    /* Tools that the client has been asked to import during the current attach. */
+    private final EnumSet<Tool> importedTools = EnumSet.noneOf(Tool.class);
+    private boolean toolImportPending;
+
+    private ToolbarMode toolbarMode = ToolbarMode.ELEMENTS;
+
+    private MediaStore mediaStore;
+
+    private transient HtmlDocument document;
+    /* The document replaced by the last parse, the old value's one while a value change is handled. */
+    private transient HtmlDocument previousDocument;
+    private transient ValueChangeRange changeRange;
+
+    private ValueEquality valueEquality = ValueEquality.EXACT;
+
+    private boolean sanitizeClientValues;
+
+    private int maxValueLength;
+    private long maxIngressRate;
+    private DomListenerRegistration overflowRegistration;
+    /* The canonical forms of the last two compared values, usually the current and the new one. */
+    private transient String canonicalSource;
+    private transient String canonicalForm;
+    private transient String previousCanonicalSource;
+    private transient String previousCanonicalForm;
+
+    private ValueSyncMode valueSyncMode = ValueSyncMode.FULL;
+
+    private RenderMode renderMode = RenderMode.EDITOR;
+    private Element staticElement;
+    /* Set while the value property is left out of the state tree, which is not a change of the value. */
+    private boolean removingValueProperty;
+    private boolean lazyActivated;
+    private DomListenerRegistration lazyActivationRegistration;
+
+    private AsyncValidation asyncValidation;
+    private Registration asyncValidationRegistration;
+
+    /* Set from any thread by pushValue, waiting for the next push batch of the UI. */
+    private final AtomicReference<String> pushedValue = new AtomicReference<>();
+    /* The UI while attached, read by pushValue, which can't use getUI() outside of the session lock. */
+    private volatile UI pushUi;
+    private volatile int pushInterval = DEFAULT_PUSH_INTERVAL;
+
+    private RevisionHistory revisionHistory;
+    private Registration revisionRegistration;
+    private boolean movingInHistory;
+
+    private DomListenerRegistration deltaRegistration;
+    /* Deltas from an older epoch are based on a value that has been replaced on the server side. */
+    private int deltaEpoch;
+    private int deltaRevision;
+
     /**
      * Constructs a wysiwyg-e rich text editor with all the tools visible and default size of height 300px and width 800px.
      */
@@ -163,6 +321,7 @@ public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> impl
         setHeight(height);
         setWidth(width);
         initToolbar();
+        addToolChildren();
         if (!toolsVisible) {
             setAllToolsVisible(toolsVisible);
         }
@@ -192,28 +351,28 @@ public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> impl
      * }
      */
     protected void initToolbar() {
-        getElement().appendChild(new Element("wysiwyg-tool-bold"));
-        getElement().appendChild(new Element("wysiwyg-tool-italic"));
-        getElement().appendChild(new Element("wysiwyg-tool-underline"));
-        getElement().appendChild(new Element("wysiwyg-tool-strike"));
-        getElement().appendChild(new Element("wysiwyg-tool-color"));
-        getElement().appendChild(new Element("wysiwyg-tool-clear"));
-        getElement().appendChild(new Element("wysiwyg-tool-code"));
-        getElement().appendChild(new Element("wysiwyg-tool-link"));
-        getElement().appendChild(new Element("wysiwyg-tool-image"));
-        getElement().appendChild(new Element("wysiwyg-tool-audio"));
-        getElement().appendChild(new Element("wysiwyg-tool-video"));
-        getElement().appendChild(new Element("wysiwyg-tool-table"));
-        getElement().appendChild(new Element("wysiwyg-tool-ordered"));
-        getElement().appendChild(new Element("wysiwyg-tool-unordered"));
-        getElement().appendChild(new Element("wysiwyg-tool-indent"));
-        getElement().appendChild(new Element("wysiwyg-tool-outdent"));
+        addTool(Tool.BOLD);
+        addTool(Tool.ITALIC);
+        addTool(Tool.UNDERLINE);
+        addTool(Tool.STRIKE);
+        addTool(Tool.COLOR);
+        addTool(Tool.CLEAR);
+        addTool(Tool.CODE);
+        addTool(Tool.LINK);
+        addTool(Tool.IMAGE);
+        addTool(Tool.AUDIO);
+        addTool(Tool.VIDEO);
+        addTool(Tool.TABLE);
+        addTool(Tool.ORDERED);
+        addTool(Tool.UNORDERED);
+        addTool(Tool.INDENT);
+        addTool(Tool.OUTDENT);
         Element justifyElement =
                 new Element("wysiwyg-tool-justify").setAttribute("allow-right",
                         true)
                         .setAttribute("allow-center", true)
                         .setAttribute("allow-full", true);
-        getElement().appendChild(justifyElement);
+        addTool(Tool.JUSTIFY, justifyElement);
         Element headingElement = new Element("wysiwyg-tool-heading")
                 .setAttribute("allow-h1", true)
                 .setAttribute("allow-h2", true)
@@ -222,8 +381,37 @@ public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> impl
                 .setAttribute("allow-h4", true)
                 .setAttribute("allow-h5", true)
                 .setAttribute("allow-h6", true);
-        getElement().appendChild(headingElement);
-        getElement().appendChild(new Element("wysiwyg-tool-blockquote"));
+        addTool(Tool.HEADING, headingElement);
+        addTool(Tool.BLOCKQUOTE);
+    }
+
+    /**
+     * Adds a {@code <wysiwyg-tool-*>} element for the given tool to the toolbar.
+     *
+     * @param tool the tool to add, not {@code null}
+     * @see #addTool(Tool, Element)
+     */
+    protected void addTool(Tool tool) {
+        addTool(tool, new Element(TOOL_TAG_PREFIX + tool.name().toLowerCase()));
+    }
+
+    /**
+     * Adds the given element to the toolbar as the element for the given tool. Subclasses overriding
+     * {@link #initToolbar()} can add the tools with this method, or append {@code <wysiwyg-tool-*>} child elements
+     * directly; those are found by their tag after {@link #initToolbar()} has returned.
+     *
+     * @param tool    the tool to add, not {@code null}
+     * @param element the element for the tool, not {@code null}
+     */
+    protected void addTool(Tool tool, Element element) {
+        Objects.requireNonNull(tool, "Tool cannot be null");
+        Objects.requireNonNull(element, "Element cannot be null");
+
+        getElement().appendChild(element);
+        toolElements().put(tool, element);
+        if (element.isVisible()) {
+            visibleTools.add(tool);
+        }
     }
 
     /**
@@ -231,7 +419,331 @@ public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> impl
      */
     /* Inherited to get the type correct in class level javadocs. */
     public void setValue(String value) {
-        super.setValue(value);
+        String newValue = mediaStore == null || value == null ? value : relinkMedia(offloadMedia(value));
+        MetricsRegistry metrics = metricsRegistry;
+        try {
+            if (metrics == MetricsRegistry.NO_OP || valueEquals(getValue(), newValue)) {
+                super.setValue(newValue);
+                return;
+            }
+            long start = System.nanoTime();
+            super.setValue(newValue);
+            recordValueChange(metrics, start, newValue);
+        } finally {
+            changeRange = null;
+        }
+    }
+
+    @Override
+    protected void setModelValue(String newModelValue, boolean fromClient) {
+        // restoring the accepted value below comes back here as a client change
+        if (fromClient && valueSyncMode == ValueSyncMode.FULL && newModelValue != getValue()) {
+            int length = newModelValue == null ? 0 : newModelValue.length();
+            recordSync(length);
+            if (!acceptIngress(length, length)) {
+                // the state tree keeps the accepted value, nothing refers to the rejected one after this request
+                ElementPropertyMap.getModel(getElement().getNode()).setProperty("value", getValue(), false);
+                return;
+            }
+        }
+        if (fromClient && adaptiveTimeout != null) {
+            updateAdaptiveTimeout(newModelValue);
+        }
+        if (!fromClient || newModelValue == null || (!sanitizeClientValues && mediaStore == null)) {
+            updateModelValue(newModelValue, fromClient);
+            return;
+        }
+        String value = sanitizeClientValues ? sanitize(newModelValue) : newModelValue;
+        if (mediaStore != null) {
+            value = offloadMedia(value);
+        }
+        updateModelValue(value, true);
+        if (value != newModelValue) {
+            // the client still has the embedded media or the removed markup
+            setPresentationValue(value);
+        }
+    }
+
+    private void updateModelValue(String newModelValue, boolean fromClient) {
+        MetricsRegistry metrics = metricsRegistry;
+        try {
+            // changes from the server are measured in setValue
+            if (!fromClient || metrics == MetricsRegistry.NO_OP || valueEquals(getValue(), newModelValue)) {
+                super.setModelValue(newModelValue, fromClient);
+                return;
+            }
+            long start = System.nanoTime();
+            super.setModelValue(newModelValue, true);
+            recordValueChange(metrics, start, newModelValue);
+        } finally {
+            // only kept while the listeners of the change run
+            changeRange = null;
+        }
+    }
+
+    /**
+     * Gets the range of the value that changed in the given value change event of this editor. The range is
+     * computed on the first call during the event and shared with the other listeners of the same event.
+     *
+     * @param event a value change event of this editor, not {@code null}
+     * @return the changed range
+     */
+    public ValueChangeRange getChangeRange(ComponentValueChangeEvent<WysiwygE, String> event) {
+        Objects.requireNonNull(event, "Event cannot be null");
+        ValueChangeRange range = changeRange;
+        if (range == null || !range.isFor(event.getOldValue(), event.getValue())) {
+            String value = event.getValue();
+            HtmlDocument oldDocument = parsedDocument(event.getOldValue());
+            range = new ValueChangeRange(event.getOldValue(), value, null, oldDocument,
+                    value != null && value == getValue() ? getDocument() : null);
+            changeRange = range;
+        }
+        return range;
+    }
+
+    private void recordValueChange(MetricsRegistry metrics, long start, String newValue) {
+        metrics.record(this, MetricsRegistry.Metric.LISTENER_LATENCY, System.nanoTime() - start);
+        metrics.record(this, MetricsRegistry.Metric.DOCUMENT_SIZE, newValue == null ? 0 : newValue.length());
+    }
+
+    private void recordSync(int receivedSize) {
+        MetricsRegistry metrics = metricsRegistry;
+        metrics.record(this, MetricsRegistry.Metric.SYNC_ROUND_TRIPS, 1);
+        metrics.record(this, MetricsRegistry.Metric.SYNC_RECEIVED_SIZE, receivedSize);
+    }
+
+    /**
+     * Sets the registry that receives runtime measurements from all editors in the JVM. Default is
+     * {@link MetricsRegistry#NO_OP}, which costs nothing.
+     *
+     * @param metricsRegistry the registry to use, not {@code null}
+     * @see SimpleMetricsRegistry
+     */
+    public static void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        WysiwygE.metricsRegistry = Objects.requireNonNull(metricsRegistry, "Metrics registry cannot be null");
+    }
+
+    /**
+     * Gets the registry that receives runtime measurements from all editors in the JVM.
+     *
+     * @return the metrics registry
+     */
+    public static MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * Adds a value change listener that is run by the given executor instead of while holding the session lock.
+     * <p>
+     * The listener is run for one value at a time. If the value changes again while the listener is running or
+     * waiting to run, only the latest value is delivered and the values in between are skipped. A running listener
+     * can check {@link AsyncValueChangeEvent#isSuperseded()} to stop working on a value that is no longer current.
+     * <p>
+     * The executor is not serialized, after deserialization the listener uses the same executor as
+     * {@link #addAsyncValueChangeListener(AsyncValueChangeListener)}.
+     *
+     * @param executor the executor to run the listener with, not {@code null}
+     * @param listener the listener to add, not {@code null}
+     * @return a handle for removing the listener, removing also marks any running event superseded
+     */
+    public Registration addAsyncValueChangeListener(Executor executor, AsyncValueChangeListener listener) {
+        Objects.requireNonNull(executor, "Executor cannot be null");
+        Objects.requireNonNull(listener, "Listener cannot be null");
+
+        AsyncValueChangeDispatcher dispatcher = new AsyncValueChangeDispatcher(executor, listener);
+        Registration registration = addValueChangeListener(dispatcher);
+        return () -> {
+            dispatcher.remove();
+            registration.remove();
+        };
+    }
+
+    /**
+     * Adds a value change listener that is run on a virtual thread when available, and in the common fork join pool
+     * otherwise.
+     *
+     * @param listener the listener to add, not {@code null}
+     * @return a handle for removing the listener
+     * @see #addAsyncValueChangeListener(Executor, AsyncValueChangeListener)
+     */
+    public Registration addAsyncValueChangeListener(AsyncValueChangeListener listener) {
+        return addAsyncValueChangeListener(AsyncValueChangeDispatcher.DefaultExecutor.INSTANCE, listener);
+    }
+
+    /**
+     * Gets the current value as a document tree. The tree is parsed at most once per value and shared by all the
+     * callers, so e.g. several value change listeners analyzing the value don't each parse it again.
+     *
+     * @return the document for the current value, not {@code null}
+     */
+    public HtmlDocument getDocument() {
+        String value = getValue() == null ? "" : getValue();
+        HtmlDocument current = document;
+        if (current == null || !current.getHtml().equals(value)) {
+            previousDocument = current;
+            document = current = HtmlDocument.parse(value);
+        }
+        return current;
+    }
+
+    /* The document already parsed for the given value, or null. */
+    HtmlDocument parsedDocument(String value) {
+        String html = value == null ? "" : value;
+        for (HtmlDocument parsed : new HtmlDocument[]{document, previousDocument}) {
+            if (parsed != null && parsed.getHtml().equals(html)) {
+                return parsed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the store for media embedded in the value. Default is {@code null}, which keeps the media embedded.
+     * <p>
+     * When a store is set, images, audio and video embedded in the value as base64 data URIs, e.g. by pasting, are
+     * moved to the store and replaced with URLs that serve them from the store. This keeps the value and its
+     * synchronization small. Media is keyed by its content hash, so the same media is stored once. Only PNG, JPEG,
+     * GIF and WebP images and common audio and video types are moved, other data URIs like SVG images stay embedded
+     * as they could run scripts when served from the application.
+     * <p>
+     * Media URLs in values set with {@link #setValue(String)} are mapped to URLs for the current session, so values
+     * saved in one session can be shown in another one as long as the store still has the media. The URLs are
+     * resolved with {@link #getMediaUrl(String)}.
+     *
+     * @param mediaStore the store for the media, or {@code null} to keep the media embedded
+     * @see InMemoryMediaStore
+     * @see FileMediaStore
+     */
+    public void setMediaStore(MediaStore mediaStore) {
+        this.mediaStore = mediaStore;
+    }
+
+    /**
+     * Gets the store for media embedded in the value.
+     *
+     * @return the media store, or {@code null} if media is kept embedded
+     * @see #setMediaStore(MediaStore)
+     */
+    public MediaStore getMediaStore() {
+        return mediaStore;
+    }
+
+    /**
+     * Gets the URL for media in the {@link #getMediaStore() media store}. By default the media is registered as a
+     * stream resource in the current session, once per session. Override to e.g. serve the media from a CDN. The
+     * returned URL should end with {@code "wysiwyg-e-media-" + hash} for it to be mapped again when the value is
+     * set to an editor in another session.
+     *
+     * @param hash the SHA-256 hash of the media as a lower case hex string
+     * @return the URL for the media
+     */
+    protected String getMediaUrl(String hash) {
+        VaadinSession session = VaadinSession.getCurrent();
+        if (session == null) {
+            throw new IllegalStateException("Media URLs can only be created while a session is locked");
+        }
+        return MediaOffloader.getResourceUrl(session, mediaStore, hash);
+    }
+
+    private String offloadMedia(String value) {
+        return MediaOffloader.offload(value, mediaStore, this::getMediaUrl);
+    }
+
+    private String relinkMedia(String value) {
+        return MediaOffloader.relink(value, this::getMediaUrl);
+    }
+
+    /**
+     * Sets the value by reading all the characters from the given reader. The reader is not closed.
+     * <p>
+     * The characters are read in chunks into a builder for the new value, which is copied once more into the
+     * value. Use {@link #readValueFrom(Reader, int)} when the length is known, so that the builder isn't resized
+     * while reading.
+     *
+     * @param reader the reader to read the value from, not {@code null}
+     * @throws IOException if reading fails, the value is not changed in that case
+     */
+    public void readValueFrom(Reader reader) throws IOException {
+        readValueFrom(reader, STREAM_BUFFER_SIZE);
+    }
+
+    /**
+     * Sets the value by reading all the characters from the given reader, sizing the builder for the new value
+     * for the given number of characters. The reader is not closed.
+     * <p>
+     * With the exact length, reading makes no copies of the document besides the final one into the value. A
+     * wrong length only costs resizing or unused capacity.
+     *
+     * @param reader         the reader to read the value from, not {@code null}
+     * @param expectedLength the expected number of characters, {@code >= 0}
+     * @throws IOException if reading fails, the value is not changed in that case
+     */
+    public void readValueFrom(Reader reader, int expectedLength) throws IOException {
+        Objects.requireNonNull(reader, "Reader cannot be null");
+        if (expectedLength < 0) {
+            throw new IllegalArgumentException("Expected length cannot be negative: " + expectedLength);
+        }
+
+        StringBuilder builder = new StringBuilder(expectedLength);
+        char[] buffer = new char[STREAM_BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            builder.append(buffer, 0, read);
+        }
+        setValue(builder.toString());
+    }
+
+    /**
+     * Sets the value by decoding all the bytes from the given input stream. The stream is not closed.
+     *
+     * @param inputStream the stream to read the value from, not {@code null}
+     * @param charset     the charset of the bytes, not {@code null}
+     * @throws IOException if reading fails, the value is not changed in that case
+     * @see #readValueFrom(Reader)
+     */
+    public void readValueFrom(InputStream inputStream, Charset charset) throws IOException {
+        Objects.requireNonNull(inputStream, "Input stream cannot be null");
+        Objects.requireNonNull(charset, "Charset cannot be null");
+
+        readValueFrom(new InputStreamReader(inputStream, charset));
+    }
+
+    /**
+     * Writes the current value to the given writer. The writer is not flushed or closed.
+     * <p>
+     * The value is written in chunks, so unlike {@link Writer#write(String)} no copy of the whole document is
+     * made.
+     *
+     * @param writer the writer to write the value to, not {@code null}
+     * @throws IOException if writing fails
+     */
+    public void writeValueTo(Writer writer) throws IOException {
+        Objects.requireNonNull(writer, "Writer cannot be null");
+
+        String value = getValue();
+        char[] buffer = new char[Math.min(STREAM_BUFFER_SIZE, value.length())];
+        for (int start = 0; start < value.length(); start += buffer.length) {
+            int end = Math.min(start + buffer.length, value.length());
+            value.getChars(start, end, buffer, 0);
+            writer.write(buffer, 0, end - start);
+        }
+    }
+
+    /**
+     * Writes the current value to the given output stream encoded with the given charset. The value is encoded
+     * chunk by chunk, without a byte array for the whole document. The stream is flushed but not closed.
+     *
+     * @param outputStream the stream to write the value to, not {@code null}
+     * @param charset      the charset to encode the value with, not {@code null}
+     * @throws IOException if writing fails
+     */
+    public void writeValueTo(OutputStream outputStream, Charset charset) throws IOException {
+        Objects.requireNonNull(outputStream, "Output stream cannot be null");
+        Objects.requireNonNull(charset, "Charset cannot be null");
+
+        Writer writer = new OutputStreamWriter(outputStream, charset);
+        writeValueTo(writer);
+        writer.flush();
     }
 
     /**
@@ -272,32 +784,132 @@ public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> impl
     }
 
     private void updateContentEditable() {
-            if (isContentEditable() == previousContentEditable) {
+        if (isContentEditable() == previousContentEditable) {
             return;
         }
         previousContentEditable = isContentEditable();
-        command = ui -> {
-            ui.beforeClientResponse(this, context -> {
-                boolean contentEditable = isContentEditable();
-                getElement().executeJs(CONTENT_EDITABLE_EXECUTION,
-                        String.valueOf(contentEditable), !contentEditable);
-            });
-        };
-        //
-        getElement().getNode().runWhenAttached(command);
-        // in case the element is removed & added, it won't be in
-        // readonly mode unless explicitly set. thus need to always set
-        // it to read only if necessary
-        if (!isContentEditable() && detachListenerRegistration == null) {
-            detachListenerRegistration = addDetachListener(event -> {
-                getElement().getNode().runWhenAttached(command);
-                detachListenerRegistration.remove();
-                detachListenerRegistration = null;
-            });
-        } else if (!isReadOnly() && detachListenerRegistration != null) {
-            detachListenerRegistration.remove();
-            detachListenerRegistration = null;
+        // when detached, onAttach sends the state to the new client side element
+        if (!updateRendering() && getElement().getNode().isAttached()) {
+            scheduleContentEditableUpdate();
+        }
+    }
+
+    private void scheduleContentEditableUpdate() {
+        contentEditablePending = true;
+        scheduleCommands();
+    }
+
+    /**
+     * Sets how the editor is shown while it is read-only or disabled. Default is {@link RenderMode#EDITOR}.
+     * <p>
+     * With {@link RenderMode#STATIC} a read-only or disabled editor shows its value as sanitized static HTML and
+     * doesn't load the web component or the tools, which makes it cheap to show many values e.g. in a grid. Only
+     * the static HTML is sent to the browser, the value itself is sent when the editor becomes editable and the
+     * web component is loaded.
+     * <p>
+     * With {@link RenderMode#LAZY} an editable editor is also shown as static HTML until the user focuses or
+     * clicks it or it is scrolled into view, and only then loads the web component. The value, value change mode
+     * and listeners work the same way before and after the activation.
+     *
+     * @param renderMode the render mode to use, not {@code null}
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        Objects.requireNonNull(renderMode, "Render mode cannot be null");
+        this.renderMode = renderMode;
+        if (renderMode == RenderMode.LAZY && !lazyActivated && lazyActivationRegistration == null) {
+            lazyActivationRegistration = getElement().addEventListener("lazy-activate", event -> activateLazily());
+            if (getElement().getNode().isAttached()) {
+                initLazyActivation();
+            }
+        }
+        updateRendering();
+    }
+
+    /**
+     * Gets how the editor is shown while it is read-only or disabled.
+     *
+     * @return the render mode
+     * @see #setRenderMode(RenderMode)
+     */
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * Returns whether the editor is currently shown as static HTML.
+     *
+     * @return {@code true} if shown as static HTML, {@code false} if as the editor
+     * @see #setRenderMode(RenderMode)
+     */
+    public boolean isRenderedStatically() {
+        switch (renderMode) {
+            case STATIC:
+                return !isContentEditable();
+            case LAZY:
+                return !isContentEditable() || !lazyActivated;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Activates the editor of a {@link RenderMode#LAZY} editor without waiting for the user to get to it. Has no
+     * effect if the editor has already been activated.
+     */
+    public void activateLazily() {
+        if (lazyActivated) {
+            return;
+        }
+        lazyActivated = true;
+        if (lazyActivationRegistration != null) {
+            lazyActivationRegistration.remove();
+            lazyActivationRegistration = null;
+        }
+        updateRendering();
+    }
+
+    private void initLazyActivation() {
+        getElement().executeJs(CONNECTOR + "initLazyActivation(this)");
+    }
+
+    /* Returns true if switched to the editor, the client side has been updated then. */
+    private boolean updateRendering() {
+        boolean rendersStatically = isRenderedStatically();
+        if (rendersStatically == (staticElement != null)) {
+            return false;
+        }
+        if (rendersStatically) {
+            staticElement = new Element("div");
+            // not shown if the web component has been loaded
+            staticElement.setAttribute("slot", "static");
+            staticElement.setProperty("innerHTML", HtmlSanitizer.sanitize(getValue()));
+            getElement().appendChild(staticElement);
+            getElement().setAttribute("static", true);
+            // the static copy is all the client needs, the value is sent when the editor is activated
+            removingValueProperty = true;
+            try {
+                getElement().removeProperty("value");
+            } finally {
+                removingValueProperty = false;
+            }
+            return false;
+        }
+        getElement().removeChild(staticElement);
+        staticElement = null;
+        getElement().removeAttribute("static");
+        setPresentationValue(getValue());
+        if (getElement().getNode().isAttached()) {
+            activate();
+        }
+        return true;
+    }
+
+    private void activate() {
+        scheduleToolImport();
+        if (toolbarMode == ToolbarMode.COMPACT) {
+            initCompactToolbar();
         }
+        scheduleContentEditableUpdate();
     }
 
     private boolean isContentEditable() {
@@ -346,70 +958,489 @@ public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> impl
     }
 
     /**
-     * Redoes the last edit.
+     * Redoes the last edit. With a revision history, this moves to the next revision in it, if the current one
+     * isn't the latest.
+     *
+     * @see #setRevisionHistoryLimit(int)
      */
     public void redo() {
-        getElement().callJsFunction("redo");
+        if (revisionHistory == null) {
+            queueCommand("redo");
+        } else if (isRedoAllowed() && revisionHistory.getCurrent() < revisionHistory.getLatest()) {
+            moveInHistory(revisionHistory.getCurrent() + 1);
+        }
     }
 
     /**
-     * Undoes the last edit.
+     * Undoes the last edit. With a revision history, this moves to the previous revision in it, if the current one
+     * isn't the oldest.
+     *
+     * @see #setRevisionHistoryLimit(int)
      */
     public void undo() {
-        getElement().callJsFunction("undo");
+        if (revisionHistory == null) {
+            queueCommand("undo");
+        } else if (isUndoAllowed() && revisionHistory.getCurrent() > revisionHistory.getOldest()) {
+            moveInHistory(revisionHistory.getCurrent() - 1);
+        }
+    }
+
+    @Override
+    public void setErrorMessage(String errorMessage) {
+        getElement().setProperty("errorMessage", errorMessage == null ? "" : errorMessage);
+    }
+
+    @Override
+    public String getErrorMessage() {
+        return getElement().getProperty("errorMessage");
     }
 
     /**
-     * Sets all the tools visible or hidden.
-     *
-     * @param allToolsVisible {@code true} for setting all tools visible, {@code false} for hiding all tools
-     * @see #setToolsInvisible(Tool...) for hiding specific tools
-     * @see #setToolsVisible(Tool...) for showing specific tools
-     * @see #setToolVisible(Tool, boolean) for showing or hiding specific tool
+     * {@inheritDoc}
+     * <p>
+     * An invalid editor has the {@code invalid} attribute for styling.
      */
-    public void setAllToolsVisible(boolean allToolsVisible) {
-        if (allToolsVisible) {
-            setToolsInvisible();
-        } else {
-            setToolsVisible();
-        }
+    @Override
+    public void setInvalid(boolean invalid) {
+        getElement().setProperty("invalid", invalid);
+        getElement().setAttribute("invalid", invalid);
+    }
+
+    @Override
+    public boolean isInvalid() {
+        return getElement().getProperty("invalid", false);
     }
 
     /**
-     * Returns whether all the tools in the toolbar are visible or not.
+     * Adds a validator that is run on an executor instead of the UI thread, for validation that takes long with
+     * large values, like checking the links of the document. The validators are run in the order they were
+     * added against the value when it changes, until one of them fails. The result is set to the invalid state
+     * and the error message of the editor with {@link UI#access(com.vaadin.flow.server.Command)}, which
+     * requires server push to be enabled.
+     * <p>
+     * When the value changes again before the validation has finished, the validation of the old value is
+     * cancelled: the thread running it is interrupted, no further validators are run for it and its result is
+     * never published. A validator that takes long can check {@link Thread#isInterrupted()} to stop early.
+     * <p>
+     * The value is only validated while the editor is attached, and again when it is attached. Exceptions
+     * thrown by the validators are handled by the error handler of the session. The validators are not part of
+     * a {@link com.vaadin.flow.data.binder.Binder}, which sets the invalid state with its own validators; use
+     * either one for an editor.
      *
-     * @return {@code true} for visible, {@code false} if not
+     * @param validator the validator, not {@code null}
+     * @return a registration for removing the validator
+     * @see #setAsyncValidationExecutor(Executor)
      */
-    public boolean isAllToolsVisible() {
-        Stream<Boolean> invisibleTools = Stream.of(Tool.values()).map(this::isToolVisible).filter(visible -> !visible);
-        return invisibleTools.count() == 0;
+    public Registration addAsyncValidator(Validator<String> validator) {
+        Objects.requireNonNull(validator, "Validator cannot be null");
+        if (asyncValidation == null) {
+            asyncValidation = new AsyncValidation(AsyncValueChangeDispatcher.DefaultExecutor.INSTANCE);
+        }
+        if (asyncValidationRegistration == null) {
+            asyncValidationRegistration = addValueChangeListener(event -> asyncValidation.validate(this));
+        }
+        asyncValidation.add(validator);
+        asyncValidation.validate(this);
+        return () -> {
+            asyncValidation.remove(validator);
+            if (!asyncValidation.isEmpty()) {
+                asyncValidation.validate(this);
+            } else if (asyncValidationRegistration != null) {
+                asyncValidationRegistration.remove();
+                asyncValidationRegistration = null;
+                asyncValidation.cancel();
+                setValidationResult(ValidationResult.ok());
+            }
+        };
     }
 
     /**
-     * Sets the given tools visible and hides all other tools.
+     * Sets the executor for the validators added with {@link #addAsyncValidator(Validator)}. Default is virtual
+     * threads when available, the common fork/join pool otherwise. The executor is not serialized, the default
+     * is used after deserialization.
      *
-     * @param tools the tools to set visible, not {@code null}
-     * @see #setAllToolsVisible(boolean) for hiding all tools
-     * @see #setToolsInvisible(Tool...) for hiding specific tools
-     * @see #setToolVisible(Tool, boolean) for showing or hiding specific tool
+     * @param executor the executor, not {@code null}
      */
-    public void setToolsVisible(Tool... tools) {
-        Objects.requireNonNull(tools);
-
-        Set<Tool> visibleTools = new HashSet<>(Arrays.asList(tools));
-        Stream.of(Tool.values()).forEach(tool -> setToolVisibleInternal(tool, visibleTools.contains(tool)));
+    public void setAsyncValidationExecutor(Executor executor) {
+        Objects.requireNonNull(executor, "Executor cannot be null");
+        if (asyncValidation == null) {
+            asyncValidation = new AsyncValidation(executor);
+        } else {
+            asyncValidation.setExecutor(executor);
+        }
     }
 
     /**
-     * Sets the given tools invisible and shows all other tools.
+     * Gets whether the validators added with {@link #addAsyncValidator(Validator)} are still running for the
+     * current value.
      *
-     * @param tools the tools to set visible, not {@code null}
+     * @return {@code true} if the result for the current value hasn't been published yet
+     */
+    public boolean isAsyncValidationPending() {
+        return asyncValidation != null && asyncValidation.isPending();
+    }
+
+    /**
+     * Returns a validator reporting the result of the validators added with {@link #addAsyncValidator(Validator)}
+     * to a {@link com.vaadin.flow.data.binder.Binder}. The validator passes the last published result when it is for
+     * the value being validated, and fails with the given message while the validation of the value is still
+     * pending, so that a bean isn't written with a value that hasn't been validated. Without asynchronous
+     * validators, every value passes.
+     * <p>
+     * Binder runs the validator when the value changes, before the result is there; validate the binder again,
+     * e.g. with {@link com.vaadin.flow.data.binder.Binder#validate()} or when writing the bean, for the published
+     * result.
+     *
+     * @param pendingErrorMessage the error message while the validation is pending, not {@code null}
+     * @return the validator
+     */
+    public Validator<String> createBinderValidator(String pendingErrorMessage) {
+        Objects.requireNonNull(pendingErrorMessage, "Pending error message cannot be null");
+        return (value, context) -> {
+            if (asyncValidation == null || asyncValidation.isEmpty()) {
+                return ValidationResult.ok();
+            }
+            ValidationResult result = asyncValidation.getResult(value == null ? "" : value);
+            return result != null ? result : ValidationResult.error(pendingErrorMessage);
+        };
+    }
+
+    /* Called by the async validation while holding the session lock. */
+    void setValidationResult(ValidationResult result) {
+        setInvalid(result.isError());
+        setErrorMessage(result.isError() ? result.getErrorMessage() : null);
+    }
+
+    /**
+     * Sets the value from any thread, without holding the session lock. Values pushed in quick succession are
+     * coalesced, only the latest one is set: at most once per push interval, together with the values pushed to
+     * the other editors of the same UI, in a single {@link UI#access(com.vaadin.flow.server.Command)}. That is one
+     * lock of the session and, with server push enabled, one push to the browser for all of them.
+     * <p>
+     * Meant for feeding live content into editors from background threads. A value pushed while the editor is
+     * detached is set when it is attached. The value is set with {@link #setValue(String)}, so the value change
+     * events are fired in the UI thread like for any other change from the server.
+     *
+     * @param value the new value, not {@code null}
+     * @see #setPushInterval(int)
+     */
+    public void pushValue(String value) {
+        Objects.requireNonNull(value, "Value cannot be null");
+        if (pushedValue.getAndSet(value) != null) {
+            // the earlier value is waiting for a batch, replaced
+            return;
+        }
+        UI ui = pushUi;
+        if (ui != null) {
+            PushBatch.add(ui, this, pushInterval);
+        }
+    }
+
+    /**
+     * Sets the shortest time between setting values pushed with {@link #pushValue(String)}. Default is
+     * {@link #DEFAULT_PUSH_INTERVAL}. When a value is pushed to an editor of a UI without a batch waiting, the
+     * interval of that editor decides when the batch is set.
+     *
+     * @param pushInterval the interval in milliseconds, {@code >= 0}
+     */
+    public void setPushInterval(int pushInterval) {
+        if (pushInterval < 0) {
+            throw new IllegalArgumentException("Push interval cannot be negative: " + pushInterval);
+        }
+        this.pushInterval = pushInterval;
+    }
+
+    /**
+     * Gets the shortest time between setting values pushed with {@link #pushValue(String)}.
+     *
+     * @return the interval in milliseconds
+     * @see #setPushInterval(int)
+     */
+    public int getPushInterval() {
+        return pushInterval;
+    }
+
+    /* Called by the push batch while holding the session lock. */
+    void applyPushedValue(UI ui) {
+        if (getUI().orElse(null) != ui) {
+            // moved to another UI, set when attached there
+            return;
+        }
+        String value = pushedValue.getAndSet(null);
+        if (value != null) {
+            setValue(value);
+        }
+    }
+
+    /**
+     * Sets the memory limit of the revision history kept on the server, or disables it with {@code 0}, the
+     * default.
+     * <p>
+     * With a revision history, every value change is a revision in it, whether it's from the browser or set on
+     * the server, and {@link #undo()} and {@link #redo()} move between the revisions instead of using the
+     * history of the browser. The history is kept while the editor is detached and after the page is reloaded.
+     * The browser keeps its own history for keyboard shortcuts; what they change is a new revision like any other
+     * edit.
+     * <p>
+     * Revisions are mostly stored as the edit from the previous revision, with a full copy of the value every now
+     * and then. The oldest revisions are dropped when the estimated memory use goes over the limit, the current
+     * value is always kept.
+     *
+     * @param maxBytes the estimated memory the revisions may use in bytes, or {@code 0} to disable the history
+     * @see #restoreRevision(long)
+     */
+    public void setRevisionHistoryLimit(int maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Revision history limit cannot be negative: " + maxBytes);
+        }
+        if (maxBytes == 0) {
+            if (revisionHistory != null) {
+                revisionRegistration.remove();
+                revisionRegistration = null;
+                revisionHistory = null;
+            }
+        } else if (revisionHistory == null) {
+            revisionHistory = new RevisionHistory(getValue(), maxBytes);
+            revisionRegistration = addValueChangeListener(event -> {
+                if (!movingInHistory) {
+                    revisionHistory.add(event.getValue());
+                }
+            });
+        } else {
+            revisionHistory.setLimit(maxBytes);
+        }
+    }
+
+    /**
+     * Gets the memory limit of the revision history.
+     *
+     * @return the limit in bytes, or {@code 0} if there is no revision history
+     * @see #setRevisionHistoryLimit(int)
+     */
+    public int getRevisionHistoryLimit() {
+        return revisionHistory == null ? 0 : (int) revisionHistory.getLimit();
+    }
+
+    /**
+     * Gets the number of the oldest revision in the revision history. Revisions are numbered from 0, the value
+     * when the history was enabled.
+     *
+     * @return the oldest revision
+     * @throws IllegalStateException if there is no revision history
+     * @see #setRevisionHistoryLimit(int)
+     */
+    public long getOldestRevision() {
+        return revisionHistory().getOldest();
+    }
+
+    /**
+     * Gets the number of the latest revision in the revision history.
+     *
+     * @return the latest revision
+     * @throws IllegalStateException if there is no revision history
+     * @see #setRevisionHistoryLimit(int)
+     */
+    public long getLatestRevision() {
+        return revisionHistory().getLatest();
+    }
+
+    /**
+     * Gets the number of the revision the editor has, the latest one unless {@link #undo()} has been called.
+     *
+     * @return the current revision
+     * @throws IllegalStateException if there is no revision history
+     * @see #setRevisionHistoryLimit(int)
+     */
+    public long getCurrentRevision() {
+        return revisionHistory().getCurrent();
+    }
+
+    /**
+     * Gets the value of the given revision.
+     *
+     * @param revision the revision, from the oldest to the latest
+     * @return the value of the revision
+     * @throws IllegalStateException    if there is no revision history
+     * @throws IllegalArgumentException if the revision isn't in the history
+     * @see #setRevisionHistoryLimit(int)
+     */
+    public String getRevision(long revision) {
+        return revisionHistory().get(revision);
+    }
+
+    /**
+     * Sets the value of the given revision as the value of the editor. This is a new revision after the current
+     * one, so restoring can be undone.
+     *
+     * @param revision the revision, from the oldest to the latest
+     * @throws IllegalStateException    if there is no revision history
+     * @throws IllegalArgumentException if the revision isn't in the history
+     * @see #setRevisionHistoryLimit(int)
+     */
+    public void restoreRevision(long revision) {
+        setValue(revisionHistory().get(revision));
+    }
+
+    private RevisionHistory revisionHistory() {
+        if (revisionHistory == null) {
+            throw new IllegalStateException("There is no revision history, see setRevisionHistoryLimit(int)");
+        }
+        return revisionHistory;
+    }
+
+    private void moveInHistory(long revision) {
+        movingInHistory = true;
+        try {
+            setValue(revisionHistory.moveTo(revision));
+        } finally {
+            movingInHistory = false;
+        }
+    }
+
+    /**
+     * Inserts the given HTML at the caret, replacing the selection if there is one. The editor is focused for
+     * that. The inserted content is part of the undo history and is synchronized back to the server like any
+     * other edit.
+     *
+     * @param html the HTML to insert, not {@code null}
+     */
+    public void insertHtml(String html) {
+        Objects.requireNonNull(html, "HTML cannot be null");
+        queueCommand("insertHtml", Json.create(html));
+    }
+
+    /**
+     * Runs the given editing command of the browser, like {@code "bold"} or {@code "formatBlock"}, on the
+     * selection of the editor. The editor is focused for that. See {@code document.execCommand} for the commands.
+     *
+     * @param command the command to run, not {@code null}
+     * @param value   the value for commands that take one, or {@code null}
+     */
+    public void execCommand(String command, String value) {
+        Objects.requireNonNull(command, "Command cannot be null");
+        queueCommand("execCommand", Json.create(command), value == null ? Json.createNull() : Json.create(value));
+    }
+
+    /*
+     * The imperative calls to the client side are collected for the response and sent as one invocation. Of the
+     * content editable state only the latest is sent. The calls to a statically rendered editor are kept until it
+     * is activated.
+     */
+    private void queueCommand(String name, JsonValue... arguments) {
+        JsonArray command = Json.createArray();
+        command.set(0, name);
+        for (JsonValue argument : arguments) {
+            command.set(command.length(), argument);
+        }
+        if (pendingCommands == null) {
+            pendingCommands = Json.createArray();
+        }
+        pendingCommands.set(pendingCommands.length(), command);
+        scheduleCommands();
+    }
+
+    private void scheduleCommands() {
+        if (commandsScheduled) {
+            return;
+        }
+        getUI().ifPresent(ui -> {
+            commandsScheduled = true;
+            ui.beforeClientResponse(this, context -> runCommands());
+        });
+    }
+
+    private void runCommands() {
+        commandsScheduled = false;
+        JsonArray commands = Json.createArray();
+        if (isRenderedStatically() && !activated) {
+            // a static editor that the client hasn't upgraded has no content editable state to update, and the
+            // other commands would load the web component, they wait for the activation
+            contentEditablePending = false;
+            return;
+        }
+        if (contentEditablePending) {
+            activated = true;
+            JsonArray command = Json.createArray();
+            command.set(0, "setContentEditable");
+            command.set(1, isContentEditable());
+            commands.set(0, command);
+        }
+        contentEditablePending = false;
+        if (pendingCommands != null) {
+            for (int i = 0; i < pendingCommands.length(); i++) {
+                commands.set(commands.length(), pendingCommands.getArray(i));
+            }
+            pendingCommands = null;
+        }
+        if (commands.length() > 0) {
+            metricsRegistry.record(this, MetricsRegistry.Metric.JS_CALLS, 1);
+            getElement().executeJs(CONNECTOR + "execute(this, $0)", commands);
+        }
+    }
+
+    /**
+     * Sets all the tools visible or hidden.
+     *
+     * @param allToolsVisible {@code true} for setting all tools visible, {@code false} for hiding all tools
+     * @see #setToolsInvisible(Tool...) for hiding specific tools
+     * @see #setToolsVisible(Tool...) for showing specific tools
+     * @see #setToolVisible(Tool, boolean) for showing or hiding specific tool
+     */
+    public void setAllToolsVisible(boolean allToolsVisible) {
+        if (allToolsVisible) {
+            setToolsInvisible();
+        } else {
+            setToolsVisible();
+        }
+    }
+
+    /**
+     * Returns whether all the tools in the toolbar are visible or not.
+     *
+     * @return {@code true} for visible, {@code false} if not
+     */
+    public boolean isAllToolsVisible() {
+        return visibleTools.size() == TOOL_COUNT;
+    }
+
+    /**
+     * Sets the given tools visible and hides all other tools.
+     *
+     * @param tools the tools to set visible, not {@code null}
+     * @see #setAllToolsVisible(boolean) for hiding all tools
+     * @see #setToolsInvisible(Tool...) for hiding specific tools
+     * @see #setToolVisible(Tool, boolean) for showing or hiding specific tool
+     */
+    public void setToolsVisible(Tool... tools) {
+        Objects.requireNonNull(tools);
+
+        setToolVisibility(toolSet(tools));
+    }
+
+    /**
+     * Sets the given tools invisible and shows all other tools.
+     *
+     * @param tools the tools to set visible, not {@code null}
      */
     public void setToolsInvisible(Tool... tools) {
         Objects.requireNonNull(tools);
 
-        Set<Tool> invisibleTools = new HashSet<>(Arrays.asList(tools));
-        Stream.of(Tool.values()).forEach(tool -> setToolVisibleInternal(tool, !invisibleTools.contains(tool)));
+        setToolVisibility(EnumSet.complementOf(toolSet(tools)));
+    }
+
+    /**
+     * Sets exactly the given tools visible and hides all other tools. Only the tools whose visibility changes
+     * are updated.
+     *
+     * @param visibleTools the tools to set visible, not {@code null}
+     * @see #setToolsVisible(Tool...)
+     */
+    public void setToolVisibility(Set<Tool> visibleTools) {
+        Objects.requireNonNull(visibleTools);
+
+        for (Tool tool : Tool.values()) {
+            setToolVisibleInternal(tool, visibleTools.contains(tool));
+        }
     }
 
     /**
@@ -433,17 +1464,149 @@ public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> impl
     public boolean isToolVisible(Tool tool) {
         Objects.requireNonNull(tool, "Tool cannot be null");
 
-        return isToolVisibleInternal(tool);
+        return visibleTools.contains(tool);
+    }
+
+    private EnumMap<Tool, Element> toolElements() {
+        if (toolElements == null) {
+            toolElements = new EnumMap<>(Tool.class);
+            getElement().getChildren().forEach(child -> {
+                String tag = child.getTag();
+                if (tag.startsWith(TOOL_TAG_PREFIX)) {
+                    toolFor(tag.substring(TOOL_TAG_PREFIX.length()))
+                            .ifPresent(tool -> toolElements.put(tool, child));
+                }
+            });
+        }
+        return toolElements;
+    }
+
+    /* Picks up the tool elements initToolbar() appended without addTool(), visible ones as visible tools. */
+    private void addToolChildren() {
+        EnumMap<Tool, Element> elements = toolElements();
+        getElement().getChildren().forEach(child -> {
+            String tag = child.getTag();
+            if (tag.startsWith(TOOL_TAG_PREFIX)) {
+                toolFor(tag.substring(TOOL_TAG_PREFIX.length())).ifPresent(tool -> {
+                    Element indexed = elements.putIfAbsent(tool, child);
+                    if ((indexed == null || indexed.equals(child)) && child.isVisible()) {
+                        visibleTools.add(tool);
+                    }
+                });
+            }
+        });
+    }
+
+    private static Optional<Tool> toolFor(String name) {
+        for (Tool tool : Tool.values()) {
+            if (tool.name().equalsIgnoreCase(name)) {
+                return Optional.of(tool);
+            }
+        }
+        return Optional.empty();
     }
 
     private void setToolVisibleInternal(Tool tool, boolean visible) {
-        final String tag = tool.name().toLowerCase();
-        getElement().getChildren().filter(element -> element.getTag().endsWith(tag)).findAny().ifPresent(element -> element.setVisible(visible));
+        Element element = toolElements().get(tool);
+        boolean compact = toolbarMode == ToolbarMode.COMPACT;
+        if ((element == null && !compact) || visible == visibleTools.contains(tool)) {
+            return;
+        }
+        if (visible) {
+            visibleTools.add(tool);
+            scheduleToolImport();
+        } else {
+            visibleTools.remove(tool);
+        }
+        if (compact) {
+            getElement().setProperty(COMPACT_TOOLBAR_PROPERTY, toolMask(visibleTools));
+        } else {
+            element.setVisible(visible);
+        }
     }
 
-    private boolean isToolVisibleInternal(Tool tool) {
-        final String tag = tool.name().toLowerCase();
-        return getElement().getChildren().filter(element -> element.getTag().endsWith(tag)).findAny().filter(Element::isVisible).isPresent();
+    /**
+     * Sets how the toolbar is represented. Default is {@link ToolbarMode#ELEMENTS}.
+     * <p>
+     * With {@link ToolbarMode#COMPACT} the server side keeps no element per tool. The visible tools are sent as
+     * a single property and the client creates the default tool elements from it, so the memory used by the
+     * toolbar is small and the same for any tool configuration. Any customizations made by overriding
+     * {@link #initToolbar()} are not used in compact mode.
+     * <p>
+     * Compact mode is recommended when the session is serialized, e.g. replicated in a cluster, as it roughly
+     * halves the serialized size of an editor with a small value. In {@link ToolbarMode#ELEMENTS} mode the tool
+     * elements are serialized with the session: they are nodes of the state tree the client refers to by id, so
+     * they can't be left out and rebuilt after deserialization. Only their index on the server side is rebuilt.
+     *
+     * @param toolbarMode the toolbar mode to use, not {@code null}
+     */
+    public void setToolbarMode(ToolbarMode toolbarMode) {
+        Objects.requireNonNull(toolbarMode, "Toolbar mode cannot be null");
+        if (this.toolbarMode == toolbarMode) {
+            return;
+        }
+        this.toolbarMode = toolbarMode;
+        if (toolbarMode == ToolbarMode.COMPACT) {
+            toolElements().values().forEach(getElement()::removeChild);
+            toolElements().clear();
+            getElement().setProperty(COMPACT_TOOLBAR_PROPERTY, toolMask(visibleTools));
+            if (getElement().getNode().isAttached() && !isRenderedStatically()) {
+                initCompactToolbar();
+            }
+        } else {
+            getElement().removeProperty(COMPACT_TOOLBAR_PROPERTY);
+            EnumSet<Tool> tools = EnumSet.copyOf(visibleTools);
+            visibleTools.clear();
+            initToolbar();
+            addToolChildren();
+            setToolVisibility(tools);
+        }
+    }
+
+    /**
+     * Gets how the toolbar is represented.
+     *
+     * @return the toolbar mode
+     * @see #setToolbarMode(ToolbarMode)
+     */
+    public ToolbarMode getToolbarMode() {
+        return toolbarMode;
+    }
+
+    private void initCompactToolbar() {
+        getElement().executeJs(CONNECTOR + "initCompactToolbar(this, $0)", COMPACT_TOOLBAR_PROPERTY);
+    }
+
+    /* Bit per tool ordinal, the connector uses the same order. */
+    private static int toolMask(Set<Tool> tools) {
+        int mask = 0;
+        for (Tool tool : tools) {
+            mask |= 1 << tool.ordinal();
+        }
+        return mask;
+    }
+
+    private void scheduleToolImport() {
+        if (toolImportPending || importedTools.containsAll(visibleTools) || isRenderedStatically()) {
+            return;
+        }
+        getUI().ifPresent(ui -> {
+            toolImportPending = true;
+            ui.beforeClientResponse(this, context -> {
+                toolImportPending = false;
+                JsonArray tools = Json.createArray();
+                visibleTools.stream().filter(tool -> !importedTools.contains(tool))
+                        .forEach(tool -> tools.set(tools.length(), tool.name().toLowerCase()));
+                importedTools.addAll(visibleTools);
+                getElement().executeJs(CONNECTOR + "importTools($0)", tools);
+            });
+        });
+    }
+
+    private static EnumSet<Tool> toolSet(Tool... tools) {
+        EnumSet<Tool> set = EnumSet.noneOf(Tool.class);
+        set.addAll(Arrays.asList(tools));
+        return set;
     }
 
     // locale support is function based, it returns a JsonObject with values for redo/undo for each supported language
@@ -469,7 +1632,9 @@ public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> impl
     public void setValueChangeMode(ValueChangeMode valueChangeMode) {
         if (currentMode != valueChangeMode) {
             this.currentMode = valueChangeMode;
-            this.setSynchronizedEvent(ValueChangeMode.eventForMode(valueChangeMode, "value-changed"));
+            if (valueSyncMode == ValueSyncMode.FULL) {
+                this.setSynchronizedEvent(ValueChangeMode.eventForMode(valueChangeMode, "value-changed"));
+            }
             applyValueChangeTimeout();
         }
     }
@@ -483,13 +1648,440 @@ public class WysiwygE extends AbstractSinglePropertyField<WysiwygE, String> impl
         return valueChangeTimeout;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>Setting a fixed timeout turns off any {@link #setAdaptiveValueChangeTimeout(AdaptiveValueChangeTimeout)
+     * adaptive timeout}.</p>
+     */
     @Override
     public void setValueChangeTimeout(int valueChangeTimeout) {
+        this.adaptiveTimeout = null;
         this.valueChangeTimeout = valueChangeTimeout;
         applyValueChangeTimeout();
     }
 
+    /**
+     * Sets the value change timeout to adapt to the value size, how often the value is synchronized and the server
+     * load, within the bounds of the given policy. The timeout is recomputed on each synchronization from the
+     * client, and applied to the synchronization again when it has changed by more than a tenth.
+     * {@link #getValueChangeTimeout()} returns the currently applied timeout. The timeout only matters for
+     * {@link ValueChangeMode#LAZY} and {@link ValueChangeMode#TIMEOUT}.
+     *
+     * @param adaptiveTimeout the policy to use, or {@code null} to keep the current timeout fixed
+     */
+    public void setAdaptiveValueChangeTimeout(AdaptiveValueChangeTimeout adaptiveTimeout) {
+        this.adaptiveTimeout = adaptiveTimeout;
+        lastClientSync = 0;
+        averageSyncInterval = 0;
+        if (adaptiveTimeout != null) {
+            valueChangeTimeout = adaptiveTimeout.computeTimeout(getValue() == null ? 0 : getValue().length(), 0);
+            applyValueChangeTimeout();
+        }
+    }
+
+    /**
+     * Gets the policy for adapting the value change timeout.
+     *
+     * @return the policy, or {@code null} if the timeout is fixed
+     * @see #setAdaptiveValueChangeTimeout(AdaptiveValueChangeTimeout)
+     */
+    public AdaptiveValueChangeTimeout getAdaptiveValueChangeTimeout() {
+        return adaptiveTimeout;
+    }
+
+    private void updateAdaptiveTimeout(String value) {
+        long now = System.nanoTime();
+        if (lastClientSync != 0) {
+            double interval = (now - lastClientSync) / 1_000_000d;
+            // exponential moving average, a burst of syncs shows up within a few of them
+            averageSyncInterval = averageSyncInterval == 0 ? interval : averageSyncInterval * 0.7 + interval * 0.3;
+        }
+        lastClientSync = now;
+        double syncsPerSecond = averageSyncInterval == 0 ? 0 : 1000 / averageSyncInterval;
+        int timeout = adaptiveTimeout.computeTimeout(value == null ? 0 : value.length(), syncsPerSecond);
+        if (Math.abs(timeout - valueChangeTimeout) > valueChangeTimeout / 10) {
+            valueChangeTimeout = timeout;
+            applyValueChangeTimeout();
+        }
+    }
+
     private void applyValueChangeTimeout() {
-        ValueChangeMode.applyChangeTimeout(getValueChangeMode(), getValueChangeTimeout(), getSynchronizationRegistration());
+        if (valueSyncMode == ValueSyncMode.DELTA) {
+            if (getElement().getNode().isAttached()) {
+                initDeltaSync();
+            }
+        } else {
+            ValueChangeMode.applyChangeTimeout(getValueChangeMode(), getValueChangeTimeout(), getSynchronizationRegistration());
+        }
+        // the registration is replaced whenever the synchronized event changes
+        applyIngressFilter();
+    }
+
+    /**
+     * Sets how the value is sent from the client to the server. Default is {@link ValueSyncMode#FULL}.
+     * <p>
+     * With {@link ValueSyncMode#DELTA} only the edited part of the document is sent on each synchronization,
+     * which keeps the traffic and garbage small for large documents. {@link #getValue()},
+     * {@link #setValueChangeMode(ValueChangeMode)} and {@link #setValueChangeTimeout(int)} work the same way in
+     * both modes.
+     *
+     * @param valueSyncMode the sync mode to use, not {@code null}
+     */
+    public void setValueSyncMode(ValueSyncMode valueSyncMode) {
+        Objects.requireNonNull(valueSyncMode, "Value sync mode cannot be null");
+        if (this.valueSyncMode == valueSyncMode) {
+            return;
+        }
+        this.valueSyncMode = valueSyncMode;
+        if (valueSyncMode == ValueSyncMode.DELTA) {
+            setSynchronizedEvent(null);
+            deltaRegistration = getElement().addEventListener("value-delta", this::onValueDelta)
+                    .addEventData("event.detail.epoch")
+                    .addEventData("event.detail.revision")
+                    .addEventData("event.detail.offset")
+                    .addEventData("event.detail.length")
+                    .addEventData("event.detail.text")
+                    .addEventData("event.detail.checksum");
+            deltaEpoch++;
+            deltaRevision = 0;
+            applyValueChangeTimeout();
+        } else {
+            deltaRegistration.remove();
+            deltaRegistration = null;
+            getElement().executeJs(CONNECTOR + "stopDeltaSync(this)");
+            setSynchronizedEvent(ValueChangeMode.eventForMode(getValueChangeMode(), "value-changed"));
+            applyValueChangeTimeout();
+        }
+    }
+
+    /**
+     * Gets how the value is sent from the client to the server.
+     *
+     * @return the value sync mode
+     * @see #setValueSyncMode(ValueSyncMode)
+     */
+    public ValueSyncMode getValueSyncMode() {
+        return valueSyncMode;
+    }
+
+    /**
+     * Sanitizes the given HTML to what the visible tools of this editor produce, e.g. before storing a value. Tags
+     * that no visible tool produces are removed but their text is kept, like tables without {@link Tool#TABLE}.
+     * The contents of scripts and similar elements are removed, and so are attributes other than presentational
+     * ones and links with unsafe URLs.
+     * <p>
+     * The allowed tags and attributes are compiled once for each combination of tools, and the HTML is sanitized
+     * in a single pass without building a document tree. This method can be called from any thread, as long as
+     * the tools aren't changed at the same time.
+     *
+     * @param html the HTML to sanitize, not {@code null}
+     * @return the sanitized HTML, the same instance if nothing needed to be removed
+     * @see #setSanitizeClientValues(boolean)
+     */
+    public String sanitize(String html) {
+        Objects.requireNonNull(html, "HTML cannot be null");
+        return HtmlSanitizer.sanitize(html, HtmlSanitizer.Policy.forTools(visibleTools));
+    }
+
+    /**
+     * Sets whether the values from the browser are sanitized with {@link #sanitize(String)} before they are
+     * accepted. Default is {@code false}.
+     * <p>
+     * Markup that the visible tools can't produce only gets into the value by pasting or by a forged request.
+     * When such a value is sanitized, the sanitized value is also sent back to the browser. Embedded image, audio
+     * and video data URIs are kept, so that they can still be moved to the {@link #setMediaStore(MediaStore) media
+     * store}.
+     *
+     * @param sanitizeClientValues {@code true} to sanitize the values from the browser
+     */
+    public void setSanitizeClientValues(boolean sanitizeClientValues) {
+        this.sanitizeClientValues = sanitizeClientValues;
+    }
+
+    /**
+     * Gets whether the values from the browser are sanitized.
+     *
+     * @return {@code true} if the values from the browser are sanitized
+     * @see #setSanitizeClientValues(boolean)
+     */
+    public boolean isSanitizeClientValues() {
+        return sanitizeClientValues;
+    }
+
+    /**
+     * Sets how values are compared to decide whether the value has changed. Default is {@link ValueEquality#EXACT}.
+     * <p>
+     * With {@link ValueEquality#CANONICAL} the markup the browser produces differently for the same content, like
+     * extra whitespace or reordered attributes, doesn't fire value change events. The value of the editor is then
+     * not updated either, {@link #getValue()} keeps returning the value from the last real change.
+     *
+     * @param valueEquality the value equality to use, not {@code null}
+     */
+    public void setValueEquality(ValueEquality valueEquality) {
+        this.valueEquality = Objects.requireNonNull(valueEquality, "Value equality cannot be null");
+    }
+
+    /**
+     * Gets how values are compared to decide whether the value has changed.
+     *
+     * @return the value equality
+     * @see #setValueEquality(ValueEquality)
+     */
+    public ValueEquality getValueEquality() {
+        return valueEquality;
+    }
+
+    /**
+     * Sets the maximum length of the value in characters that the browser may send. A longer value is not sent by
+     * the browser and rejected by the server, either way a {@link ValueOverflowEvent} is fired and the value of the
+     * editor stays at the last accepted value. Default is {@code 0}, no limit.
+     *
+     * @param maxValueLength the maximum length, or {@code 0} for no limit
+     */
+    public void setMaxValueLength(int maxValueLength) {
+        if (maxValueLength < 0) {
+            throw new IllegalArgumentException("Max value length cannot be negative: " + maxValueLength);
+        }
+        this.maxValueLength = maxValueLength;
+        if (maxValueLength == 0 && overflowRegistration != null) {
+            overflowRegistration.remove();
+            overflowRegistration = null;
+        } else if (maxValueLength > 0) {
+            if (overflowRegistration == null) {
+                // reported at most once a second while the user keeps typing
+                overflowRegistration = getElement().addEventListener("value-changed", event ->
+                        fireEvent(new ValueOverflowEvent(this, ValueOverflowEvent.Reason.MAX_LENGTH,
+                                (long) event.getEventData().getNumber("element.value.length"))))
+                        .addEventData("element.value.length")
+                        .throttle(1000);
+            }
+            overflowRegistration.setFilter("element.value.length > " + maxValueLength);
+        }
+        applyIngressFilter();
+    }
+
+    /**
+     * Gets the maximum length of the value that the browser may send.
+     *
+     * @return the maximum length, {@code 0} for no limit
+     * @see #setMaxValueLength(int)
+     */
+    public int getMaxValueLength() {
+        return maxValueLength;
+    }
+
+    /**
+     * Sets the maximum rate in characters per second at which the editors of a session may receive values, bursts
+     * of up to one second's worth are allowed. The limit is shared by all the editors of the session, each applying
+     * its own rate. A sync over the limit is rejected and a {@link ValueOverflowEvent} is fired. Default is {@code 0},
+     * no limit.
+     * <p>
+     * A single sync of more than one second's worth is always rejected, so the rate has to be at least the largest
+     * value expected with {@link ValueSyncMode#FULL}, or the largest change with {@link ValueSyncMode#DELTA}.
+     *
+     * @param maxIngressRate the maximum rate in characters per second, or {@code 0} for no limit
+     */
+    public void setMaxIngressRate(long maxIngressRate) {
+        if (maxIngressRate < 0) {
+            throw new IllegalArgumentException("Max ingress rate cannot be negative: " + maxIngressRate);
+        }
+        this.maxIngressRate = maxIngressRate;
+    }
+
+    /**
+     * Gets the maximum rate at which the editors of a session may receive values.
+     *
+     * @return the maximum rate in characters per second, {@code 0} for no limit
+     * @see #setMaxIngressRate(long)
+     */
+    public long getMaxIngressRate() {
+        return maxIngressRate;
+    }
+
+    /**
+     * Adds a listener for values rejected by the limits of the editor.
+     *
+     * @param listener the listener to add, not {@code null}
+     * @return a registration for removing the listener
+     * @see #setMaxValueLength(int)
+     * @see #setMaxIngressRate(long)
+     */
+    public Registration addValueOverflowListener(ComponentEventListener<ValueOverflowEvent> listener) {
+        return addListener(ValueOverflowEvent.class, listener);
+    }
+
+    /* The browser doesn't send values over the limit, a forged request is rejected by acceptIngress. */
+    private void applyIngressFilter() {
+        DomListenerRegistration registration = valueSyncMode == ValueSyncMode.DELTA
+                ? deltaRegistration : getSynchronizationRegistration();
+        if (registration != null) {
+            registration.setFilter(maxValueLength > 0 ? "element.value.length <= " + maxValueLength : null);
+        }
+    }
+
+    private boolean acceptIngress(long valueLength, long receivedLength) {
+        if (maxValueLength > 0 && valueLength > maxValueLength) {
+            fireEvent(new ValueOverflowEvent(this, ValueOverflowEvent.Reason.MAX_LENGTH, valueLength));
+            return false;
+        }
+        if (maxIngressRate > 0) {
+            VaadinSession session = getUI().map(UI::getSession).orElse(null);
+            if (session != null && !IngressLimiter.tryAcquire(session, receivedLength, maxIngressRate)) {
+                fireEvent(new ValueOverflowEvent(this, ValueOverflowEvent.Reason.RATE, receivedLength));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean valueEquals(String value1, String value2) {
+        if (super.valueEquals(value1, value2)) {
+            return true;
+        }
+        if (valueEquality == ValueEquality.EXACT || value1 == null || value2 == null) {
+            return false;
+        }
+        String canonical1 = canonicalForm(value1);
+        String canonical2 = canonicalForm(value2);
+        // String caches its hash, so different values are usually told apart without comparing the content
+        return canonical1.hashCode() == canonical2.hashCode() && canonical1.equals(canonical2);
+    }
+
+    private String canonicalForm(String value) {
+        if (value == canonicalSource) {
+            return canonicalForm;
+        }
+        if (value == previousCanonicalSource) {
+            return previousCanonicalForm;
+        }
+        String form = HtmlCanonicalizer.canonicalize(value);
+        previousCanonicalSource = canonicalSource;
+        previousCanonicalForm = canonicalForm;
+        canonicalSource = value;
+        canonicalForm = form;
+        return form;
+    }
+
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        super.onAttach(attachEvent);
+        // before taking a value pushed while detached, a value pushed after that is batched in this UI
+        pushUi = attachEvent.getUI();
+        // a new client side element, possibly on a page that hasn't loaded the tools yet
+        importedTools.clear();
+        toolImportPending = false;
+        activated = false;
+        if (!isRenderedStatically()) {
+            activate();
+        } else if (lazyActivationRegistration != null) {
+            initLazyActivation();
+        }
+        String pushed = pushedValue.getAndSet(null);
+        if (pushed != null) {
+            // pushed while detached
+            setValue(pushed);
+        }
+        if (asyncValidation != null) {
+            // nothing is published while detached
+            asyncValidation.validate(this);
+        }
+        if (pendingCommands != null) {
+            // queued while detached
+            scheduleCommands();
+        }
+        if (valueSyncMode == ValueSyncMode.DELTA) {
+            // the client side element starts from the value in the state tree
+            deltaEpoch++;
+            deltaRevision = 0;
+            initDeltaSync();
+        }
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        super.onDetach(detachEvent);
+        pushUi = null;
+    }
+
+    @Override
+    protected boolean hasValidValue() {
+        return !removingValueProperty && super.hasValidValue();
+    }
+
+    @Override
+    protected void setPresentationValue(String newPresentationValue) {
+        if (staticElement != null) {
+            staticElement.setProperty("innerHTML", HtmlSanitizer.sanitize(newPresentationValue));
+            return;
+        }
+        if (valueSyncMode == ValueSyncMode.DELTA) {
+            // keep the state tree up to date for reattach, but send the value only once
+            ElementPropertyMap.getModel(getElement().getNode()).setProperty("value", newPresentationValue, false);
+            deltaEpoch++;
+            deltaRevision = 0;
+            getElement().executeJs(CONNECTOR + "setValue(this, $0, $1)", newPresentationValue, deltaEpoch);
+        } else {
+            super.setPresentationValue(newPresentationValue);
+        }
+    }
+
+    private void initDeltaSync() {
+        getElement().executeJs(CONNECTOR + "initDeltaSync(this, $0, $1, $2)",
+                getValueChangeMode() == null ? null : getValueChangeMode().name(), getValueChangeTimeout(), deltaEpoch);
+    }
+
+    private void onValueDelta(DomEvent event) {
+        JsonObject data = event.getEventData();
+        if ((int) data.getNumber("event.detail.epoch") != deltaEpoch) {
+            // based on a value that has since been replaced from the server
+            return;
+        }
+        int revision = (int) data.getNumber("event.detail.revision");
+        int offset = (int) data.getNumber("event.detail.offset");
+        int length = (int) data.getNumber("event.detail.length");
+        String text = data.getString("event.detail.text");
+        recordSync(text.length());
+
+        // what the client has, the value of the field lags behind it after changes that weren't real changes
+        String value = getElement().getProperty("value", "");
+        if (length >= 0 && (revision != deltaRevision || offset < 0 || offset + length > value.length())) {
+            // a delta that can't be applied is not charged to the session, the full value is
+            requestFullValue();
+            return;
+        }
+        // checked before the new value is built
+        long newLength = length < 0 ? text.length() : (long) value.length() - length + text.length();
+        if (!acceptIngress(newLength, text.length())) {
+            return;
+        }
+        String newValue;
+        if (length < 0) {
+            newValue = text;
+        } else {
+            newValue = new StringBuilder(value.length() - length + text.length())
+                    .append(value, 0, offset)
+                    .append(text)
+                    .append(value, offset + length, value.length())
+                    .toString();
+        }
+        JsonValue checksum = data.get("event.detail.checksum");
+        if (checksum != null && checksum.getType() == JsonType.NUMBER
+                && (int) checksum.asNumber() != newValue.hashCode()) {
+            requestFullValue();
+            return;
+        }
+        deltaRevision = revision + 1;
+        ElementPropertyMap.getModel(getElement().getNode()).setProperty("value", newValue, false);
+        if (length >= 0 && value == getValue()) {
+            // the client has already done the diff
+            changeRange = new ValueChangeRange(value, newValue, new TextEdit(offset, length, text),
+                    parsedDocument(value), null);
+        }
+        setModelValue(newValue, true);
+    }
+
+    private void requestFullValue() {
+        getElement().executeJs(CONNECTOR + "resync(this)");
     }
 }
@@ -0,0 +1,362 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+window.Vaadin = window.Vaadin || {};
+window.Vaadin.Flow = window.Vaadin.Flow || {};
+
+/*
+ * Client side counterpart of org.vaadin.pekka.WysiwygE.
+ */
+window.Vaadin.Flow.wysiwygEConnector = {
+
+    /* Every Nth delta carries a checksum of the full value for drift detection. */
+    CHECKSUM_INTERVAL: 20,
+
+    /* In the order of org.vaadin.pekka.WysiwygE.Tool, the bit of each tool in the compact toolbar mask. */
+    TOOLS: ['bold', 'underline', 'strike', 'color', 'clear', 'code', 'link', 'image', 'audio', 'video', 'ordered',
+        'indent', 'outdent', 'justify', 'heading', 'blockquote', 'unordered', 'italic', 'table'],
+
+    /* The order of the tools in the toolbar, the same as in WysiwygE#initToolbar(). */
+    TOOLBAR_LAYOUT: ['bold', 'italic', 'underline', 'strike', 'color', 'clear', 'code', 'link', 'image', 'audio',
+        'video', 'table', 'ordered', 'unordered', 'indent', 'outdent', 'justify', 'heading', 'blockquote'],
+
+    TOOL_ATTRIBUTES: {
+        justify: ['allow-right', 'allow-center', 'allow-full'],
+        heading: ['allow-h1', 'allow-h2', 'allow-h3', 'allow-h4', 'allow-h5', 'allow-h6']
+    },
+
+    /* Same as java.lang.String#hashCode so that the server can compare without decoding anything. */
+    checksum: function (value) {
+        let hash = 0;
+        for (let i = 0; i < value.length; i++) {
+            hash = (31 * hash + value.charCodeAt(i)) | 0;
+        }
+        return hash;
+    },
+
+    /*
+     * Imports the web component, the editor elements on the page upgrade once it has loaded. Statically rendered
+     * editors upgraded with it keep showing their static child.
+     */
+    loadEditor: function () {
+        const connector = window.Vaadin.Flow.wysiwygEConnector;
+        if (!connector._editorLoaded) {
+            connector._editorLoaded = import(/* webpackChunkName: "wysiwyg-e" */ 'wysiwyg-e-fork/wysiwyg-e.js').then(() => {
+                const prototype = customElements.get('wysiwyg-e').prototype;
+                const connectedCallback = prototype.connectedCallback;
+                prototype.connectedCallback = function () {
+                    connectedCallback.call(this);
+                    connector._applyStatic(this);
+                };
+                document.querySelectorAll('wysiwyg-e[static]').forEach(connector._applyStatic);
+            });
+        }
+        return connector._editorLoaded;
+    },
+
+    /* Runs the batched commands from the server in order, once the web component has loaded. */
+    execute: function (editor, commands) {
+        const connector = window.Vaadin.Flow.wysiwygEConnector;
+        connector.loadEditor().then(() => {
+            commands.forEach(command => connector._commands[command[0]].apply(null, [editor].concat(command.slice(1))));
+        });
+    },
+
+    _commands: {
+        setContentEditable: function (editor, editable) {
+            editor.$.editable.contentEditable = String(editable);
+            editor.$.toolbar.hidden = !editable;
+            window.Vaadin.Flow.wysiwygEConnector._applyStatic(editor);
+        },
+        undo: function (editor) {
+            editor.undo();
+        },
+        redo: function (editor) {
+            editor.redo();
+        },
+        insertHtml: function (editor, html) {
+            editor.$.editable.focus();
+            document.execCommand('insertHTML', false, html);
+        },
+        execCommand: function (editor, command, value) {
+            editor.$.editable.focus();
+            document.execCommand(command, false, value);
+        }
+    },
+
+    /*
+     * Shows the static child of an upgraded, statically rendered editor in place of the editable area. The server
+     * doesn't send the value of a static editor, the static child is all there is.
+     */
+    _applyStatic: function (editor) {
+        if (!editor.$) {
+            return;
+        }
+        const isStatic = editor.hasAttribute('static');
+        if (isStatic && !editor.__staticSlot) {
+            const slot = editor.__staticSlot = document.createElement('slot');
+            slot.name = 'static';
+            editor.$.editable.parentNode.insertBefore(slot, editor.$.editable);
+        } else if (!isStatic && editor.__staticSlot) {
+            editor.__staticSlot.remove();
+            delete editor.__staticSlot;
+        }
+        editor.$.editable.hidden = isStatic;
+        if (isStatic) {
+            editor.$.editable.contentEditable = 'false';
+            editor.$.toolbar.hidden = true;
+        }
+    },
+
+    /*
+     * Asks the server to activate the editor when it is focused, clicked or comes close to the viewport. The web
+     * component starts loading at the same time.
+     */
+    initLazyActivation: function (editor) {
+        const connector = window.Vaadin.Flow.wysiwygEConnector;
+        if (editor.__lazyActivation) {
+            return;
+        }
+        const addedTabIndex = !editor.hasAttribute('tabindex');
+        if (addedTabIndex) {
+            // focusable in the tab order like the editor it stands for
+            editor.setAttribute('tabindex', '0');
+        }
+        const activate = () => {
+            const lazy = editor.__lazyActivation;
+            if (!lazy) {
+                return;
+            }
+            delete editor.__lazyActivation;
+            if (lazy.observer) {
+                lazy.observer.disconnect();
+            }
+            editor.removeEventListener('focusin', activate);
+            editor.removeEventListener('click', activate);
+            if (addedTabIndex) {
+                editor.removeAttribute('tabindex');
+            }
+            connector.loadEditor();
+            editor.dispatchEvent(new CustomEvent('lazy-activate'));
+        };
+        const lazy = editor.__lazyActivation = {};
+        if (window.IntersectionObserver) {
+            lazy.observer = new IntersectionObserver(entries => {
+                if (entries.some(entry => entry.isIntersecting)) {
+                    activate();
+                }
+            }, {rootMargin: '200px'});
+            lazy.observer.observe(editor);
+        }
+        editor.addEventListener('focusin', activate);
+        editor.addEventListener('click', activate);
+    },
+
+    /* Imports the modules of the given tools, the tool elements upgrade once their module has loaded. */
+    importTools: function (tools) {
+        tools.forEach(tool => import(/* webpackChunkName: "wysiwyg-e-tool-[request]" */ `wysiwyg-e-fork/tools/${tool}.js`));
+    },
+
+    /*
+     * Creates the tool elements from the visible tool mask in the given property, and updates them whenever the
+     * server changes the property.
+     */
+    initCompactToolbar: function (editor, property) {
+        const connector = window.Vaadin.Flow.wysiwygEConnector;
+        if (editor.__compactToolbar) {
+            return;
+        }
+        let mask = editor[property];
+        delete editor[property];
+        editor.__compactToolbar = {};
+        Object.defineProperty(editor, property, {
+            configurable: true,
+            get: () => mask,
+            set: value => {
+                mask = value;
+                connector._renderCompactToolbar(editor, mask);
+            }
+        });
+        connector._renderCompactToolbar(editor, mask);
+    },
+
+    _renderCompactToolbar: function (editor, mask) {
+        const connector = window.Vaadin.Flow.wysiwygEConnector;
+        const tools = editor.__compactToolbar;
+        if (mask === undefined || mask === null) {
+            // back to server side tool elements
+            Object.keys(tools).forEach(tool => editor.removeChild(tools[tool]));
+            delete editor.__compactToolbar;
+            return;
+        }
+        connector.TOOLBAR_LAYOUT.forEach(tool => {
+            const visible = (mask & (1 << connector.TOOLS.indexOf(tool))) !== 0;
+            let element = tools[tool];
+            if (!element) {
+                if (!visible) {
+                    return;
+                }
+                element = document.createElement('wysiwyg-tool-' + tool);
+                (connector.TOOL_ATTRIBUTES[tool] || []).forEach(attribute => element.setAttribute(attribute, ''));
+                // keep the toolbar order regardless of the order the tools were shown in
+                const next = connector.TOOLBAR_LAYOUT.slice(connector.TOOLBAR_LAYOUT.indexOf(tool) + 1)
+                    .map(t => tools[t]).find(e => e);
+                editor.insertBefore(element, next || null);
+                tools[tool] = element;
+            }
+            element.hidden = !visible;
+        });
+    },
+
+    /*
+     * Starts sending the value as "value-delta" events instead of the full value.
+     * The mode and timeout follow the semantics of com.vaadin.flow.data.value.ValueChangeMode.
+     */
+    initDeltaSync: function (editor, mode, timeout, epoch) {
+        const connector = window.Vaadin.Flow.wysiwygEConnector;
+        let sync = editor.__deltaSync;
+        if (!sync) {
+            sync = editor.__deltaSync = {listeners: [], timer: null, lastSent: 0};
+        }
+        if (sync.epoch !== epoch) {
+            sync.epoch = epoch;
+            sync.revision = 0;
+            sync.base = editor.value || '';
+            // the first delta is always verified, the server copy might be stale
+            sync.sinceChecksum = connector.CHECKSUM_INTERVAL;
+        }
+        connector._removeDeltaListeners(editor);
+
+        const send = () => connector._sendDelta(editor);
+        let listener;
+        let eventName = 'value-changed';
+        switch (mode) {
+            case 'EAGER':
+                listener = send;
+                break;
+            case 'LAZY':
+                listener = () => {
+                    clearTimeout(sync.timer);
+                    sync.timer = setTimeout(send, timeout);
+                };
+                break;
+            case 'TIMEOUT':
+                listener = () => {
+                    if (sync.timer) {
+                        return;
+                    }
+                    const wait = Math.max(0, sync.lastSent + timeout - Date.now());
+                    sync.timer = setTimeout(() => {
+                        sync.timer = null;
+                        sync.lastSent = Date.now();
+                        send();
+                    }, wait);
+                };
+                break;
+            case 'ON_BLUR':
+                eventName = 'blur';
+                listener = send;
+                break;
+            case 'ON_CHANGE':
+                eventName = 'change';
+                listener = send;
+                break;
+            default:
+                return;
+        }
+        editor.addEventListener(eventName, listener);
+        sync.listeners.push({eventName, listener});
+    },
+
+    stopDeltaSync: function (editor) {
+        window.Vaadin.Flow.wysiwygEConnector._removeDeltaListeners(editor);
+        delete editor.__deltaSync;
+    },
+
+    /* Sets a value coming from the server without echoing it back as a delta. */
+    setValue: function (editor, value, epoch) {
+        const sync = editor.__deltaSync;
+        if (sync) {
+            clearTimeout(sync.timer);
+            sync.timer = null;
+            sync.base = value;
+            sync.epoch = epoch;
+            sync.revision = 0;
+        }
+        editor.value = value;
+    },
+
+    /* Sends the full value, used by the server when it has detected drift. */
+    resync: function (editor) {
+        const sync = editor.__deltaSync;
+        if (sync) {
+            sync.base = null;
+            window.Vaadin.Flow.wysiwygEConnector._sendDelta(editor);
+        }
+    },
+
+    _removeDeltaListeners: function (editor) {
+        const sync = editor.__deltaSync;
+        if (sync) {
+            clearTimeout(sync.timer);
+            sync.timer = null;
+            sync.listeners.forEach(l => editor.removeEventListener(l.eventName, l.listener));
+            sync.listeners = [];
+        }
+    },
+
+    _sendDelta: function (editor) {
+        const connector = window.Vaadin.Flow.wysiwygEConnector;
+        const sync = editor.__deltaSync;
+        const value = editor.value || '';
+        const base = sync.base;
+        let detail;
+        if (base === null) {
+            detail = {offset: 0, length: -1, text: value};
+        } else if (base === value) {
+            return;
+        } else {
+            let start = 0;
+            const max = Math.min(base.length, value.length);
+            while (start < max && base.charCodeAt(start) === value.charCodeAt(start)) {
+                start++;
+            }
+            let baseEnd = base.length;
+            let valueEnd = value.length;
+            while (baseEnd > start && valueEnd > start
+            && base.charCodeAt(baseEnd - 1) === value.charCodeAt(valueEnd - 1)) {
+                baseEnd--;
+                valueEnd--;
+            }
+            detail = {offset: start, length: baseEnd - start, text: value.substring(start, valueEnd)};
+        }
+        detail.epoch = sync.epoch;
+        detail.revision = sync.revision++;
+        if (++sync.sinceChecksum >= connector.CHECKSUM_INTERVAL) {
+            sync.sinceChecksum = 0;
+            detail.checksum = connector.checksum(value);
+        }
+        sync.base = value;
+        editor.dispatchEvent(new CustomEvent('value-delta', {detail: detail}));
+    }
+};
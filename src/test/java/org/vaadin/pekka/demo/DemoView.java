@@ -77,6 +77,11 @@ public class DemoView extends VerticalLayout {
         valueChangeModeComboBox.setValue(wysiwygE.getValueChangeMode());
         valueChangeModeComboBox.addValueChangeListener(event -> wysiwygE.setValueChangeMode(event.getValue()));
 
+        ComboBox<WysiwygE.ValueSyncMode> valueSyncModeComboBox = new ComboBox<>();
+        valueSyncModeComboBox.setItems(WysiwygE.ValueSyncMode.values());
+        valueSyncModeComboBox.setValue(wysiwygE.getValueSyncMode());
+        valueSyncModeComboBox.addValueChangeListener(event -> wysiwygE.setValueSyncMode(event.getValue()));
+
         FlexLayout toolbarOptions = new FlexLayout();
         toolbarOptions.getElement().getStyle().set("flex-wrap", "wrap");
         Stream.of(WysiwygE.Tool.values()).map(tool -> createToolCheckbox(tool)).forEachOrdered(toolbarOptions::add);
@@ -93,7 +98,7 @@ public class DemoView extends VerticalLayout {
                 createCheckbox("Enabled", wysiwygE::setEnabled, wysiwygE.isEnabled()),
                 createCheckbox("ReadOnly", wysiwygE::setReadOnly,
                         wysiwygE.isReadOnly()),placeholder,
-                valueChangeModeComboBox,
+                valueChangeModeComboBox, valueSyncModeComboBox,
                 createCheckbox("Redo allowed", wysiwygE::setRedoAllowed, wysiwygE.isRedoAllowed()),
                 createCheckbox("Undo allowed", wysiwygE::setUndoAllowed, wysiwygE.isUndoAllowed()),
                 new Button("Undo", event -> wysiwygE.undo()),
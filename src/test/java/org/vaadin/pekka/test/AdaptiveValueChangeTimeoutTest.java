@@ -0,0 +1,45 @@
+package org.vaadin.pekka.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.pekka.AdaptiveValueChangeTimeout;
+import org.vaadin.pekka.WysiwygE;
+
+public class AdaptiveValueChangeTimeoutTest {
+
+    @Test
+    public void testComputeTimeout_withinBounds() {
+        AdaptiveValueChangeTimeout timeout = new AdaptiveValueChangeTimeout(100, 2000);
+
+        Assert.assertEquals(100, timeout.computeTimeout(0, 0));
+        Assert.assertEquals(100, timeout.computeTimeout(1024, 0));
+        Assert.assertEquals(2000, timeout.computeTimeout(10 << 20, 0));
+        Assert.assertEquals(2000, timeout.computeTimeout(0, 100));
+
+        int medium = timeout.computeTimeout(32 * 1024, 0);
+        Assert.assertTrue(medium > 100 && medium < 2000);
+        Assert.assertTrue(timeout.computeTimeout(32 * 1024, 2) > medium);
+
+        timeout.setLoadSignal(() -> 5d);
+        Assert.assertEquals(2000, timeout.computeTimeout(0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBounds_throws() {
+        new AdaptiveValueChangeTimeout(500, 100);
+    }
+
+    @Test
+    public void testWysiwygE_adaptiveUntilFixedTimeoutSet() {
+        WysiwygE wysiwygE = new WysiwygE();
+        AdaptiveValueChangeTimeout adaptive = new AdaptiveValueChangeTimeout(50, 1000);
+
+        wysiwygE.setAdaptiveValueChangeTimeout(adaptive);
+        Assert.assertSame(adaptive, wysiwygE.getAdaptiveValueChangeTimeout());
+        Assert.assertEquals(50, wysiwygE.getValueChangeTimeout());
+
+        wysiwygE.setValueChangeTimeout(300);
+        Assert.assertNull(wysiwygE.getAdaptiveValueChangeTimeout());
+        Assert.assertEquals(300, wysiwygE.getValueChangeTimeout());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.data.binder.Binder;
+import com.vaadin.flow.data.binder.BinderValidationStatus;
+import com.vaadin.flow.data.binder.ValidationResult;
+import com.vaadin.flow.server.Command;
+import com.vaadin.flow.shared.Registration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.pekka.WysiwygE;
+
+public class AsyncValidationTest {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<String> validated = new ArrayList<>();
+    private WysiwygE wysiwygE;
+    private Registration registration;
+
+    @Before
+    public void setup() {
+        wysiwygE = new WysiwygE();
+        wysiwygE.setAsyncValidationExecutor(tasks::add);
+        new TestUI().add(wysiwygE);
+        registration = wysiwygE.addAsyncValidator((value, context) -> {
+            validated.add(value);
+            return value.length() > 10 ? ValidationResult.error("Too long") : ValidationResult.ok();
+        });
+    }
+
+    @Test
+    public void testResultPublished() {
+        runTasks();
+        Assert.assertFalse(wysiwygE.isInvalid());
+
+        wysiwygE.setValue("<p>Too long</p>");
+        Assert.assertTrue(wysiwygE.isAsyncValidationPending());
+        Assert.assertFalse(wysiwygE.isInvalid());
+        runTasks();
+
+        Assert.assertFalse(wysiwygE.isAsyncValidationPending());
+        Assert.assertTrue(wysiwygE.isInvalid());
+        Assert.assertEquals("Too long", wysiwygE.getErrorMessage());
+
+        wysiwygE.setValue("<p>Ok</p>");
+        runTasks();
+        Assert.assertFalse(wysiwygE.isInvalid());
+        Assert.assertEquals("", wysiwygE.getErrorMessage());
+    }
+
+    @Test
+    public void testSupersededValidationCancelled() {
+        runTasks();
+        validated.clear();
+
+        wysiwygE.setValue("<p>Too long</p>");
+        wysiwygE.setValue("<p>Ok</p>");
+        runTasks();
+
+        Assert.assertEquals(1, validated.size());
+        Assert.assertEquals("<p>Ok</p>", validated.get(0));
+        Assert.assertFalse(wysiwygE.isInvalid());
+    }
+
+    @Test
+    public void testValidatorRemoved_validAgain() {
+        wysiwygE.setValue("<p>Too long</p>");
+        runTasks();
+        Assert.assertTrue(wysiwygE.isInvalid());
+
+        Registration other = wysiwygE.addAsyncValidator((value, context) -> ValidationResult.ok());
+        other.remove();
+        runTasks();
+        Assert.assertTrue(wysiwygE.isInvalid());
+
+        registration.remove();
+        Assert.assertFalse(wysiwygE.isInvalid());
+        Assert.assertFalse(wysiwygE.isAsyncValidationPending());
+    }
+
+    @Test
+    public void testBinder_lastPublishedResultOrPending() {
+        Binder<Document> binder = new Binder<>();
+        binder.forField(wysiwygE).withValidator(wysiwygE.createBinderValidator("Validating"))
+                .bind(Document::getContent, Document::setContent);
+        runTasks();
+        Assert.assertTrue(binder.validate().isOk());
+
+        wysiwygE.setValue("<p>Too long</p>");
+        BinderValidationStatus<Document> status = binder.validate();
+        Assert.assertEquals("Validating", status.getValidationErrors().get(0).getErrorMessage());
+
+        runTasks();
+        status = binder.validate();
+        Assert.assertEquals("Too long", status.getValidationErrors().get(0).getErrorMessage());
+
+        wysiwygE.setValue("<p>Ok</p>");
+        Assert.assertFalse(binder.validate().isOk());
+        runTasks();
+        Document document = new Document();
+        Assert.assertTrue(binder.writeBeanIfValid(document));
+        Assert.assertEquals("<p>Ok</p>", document.getContent());
+    }
+
+    private void runTasks() {
+        List<Runnable> queued = new ArrayList<>(tasks);
+        tasks.clear();
+        queued.forEach(Runnable::run);
+    }
+
+    public static class Document {
+        private String content;
+
+        public String getContent() {
+            return content;
+        }
+
+        public void setContent(String content) {
+            this.content = content;
+        }
+    }
+
+    private static class TestUI extends UI {
+        @Override
+        public Future<Void> access(Command command) {
+            command.execute();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.vaadin.pekka.test;
+
+import com.vaadin.flow.shared.Registration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.pekka.AsyncValueChangeEvent;
+import org.vaadin.pekka.WysiwygE;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncValueChangeListenerTest {
+
+    private static final BlockingQueue<String> DESERIALIZED_VALUES = new LinkedBlockingQueue<>();
+
+    private WysiwygE wysiwygE;
+    private Deque<Runnable> tasks;
+    private List<AsyncValueChangeEvent> events;
+
+    @Before
+    public void setup() {
+        wysiwygE = new WysiwygE();
+        tasks = new ArrayDeque<>();
+        events = new ArrayList<>();
+    }
+
+    @Test
+    public void testIntermediateValuesCollapsed() {
+        wysiwygE.addAsyncValueChangeListener(tasks::add, events::add);
+
+        wysiwygE.setValue("a");
+        wysiwygE.setValue("b");
+        wysiwygE.setValue("c");
+
+        Assert.assertEquals(1, tasks.size());
+        Assert.assertTrue(events.isEmpty());
+
+        tasks.poll().run();
+
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("", events.get(0).getOldValue());
+        Assert.assertEquals("c", events.get(0).getValue());
+        Assert.assertEquals("c", events.get(0).getDocument().getText());
+        Assert.assertEquals("c", events.get(0).getChangeRange().getInsertedText());
+        Assert.assertFalse(events.get(0).isFromClient());
+        Assert.assertFalse(events.get(0).isSuperseded());
+
+        wysiwygE.setValue("d");
+        Assert.assertTrue(events.get(0).isSuperseded());
+        tasks.poll().run();
+        Assert.assertEquals("c", events.get(1).getOldValue());
+        Assert.assertEquals("d", events.get(1).getValue());
+    }
+
+    @Test
+    public void testValueChangedWhileRunning_runAgainWithLatest() {
+        wysiwygE.addAsyncValueChangeListener(tasks::add, event -> {
+            events.add(event);
+            if (events.size() == 1) {
+                wysiwygE.setValue("b");
+                wysiwygE.setValue("c");
+                Assert.assertTrue(event.isSuperseded());
+            }
+        });
+
+        wysiwygE.setValue("a");
+        tasks.poll().run();
+
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("c", events.get(1).getValue());
+        Assert.assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testRemove_pendingNotDelivered() {
+        Registration registration = wysiwygE.addAsyncValueChangeListener(tasks::add, events::add);
+
+        wysiwygE.setValue("a");
+        registration.remove();
+        wysiwygE.setValue("b");
+        tasks.forEach(Runnable::run);
+
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testSerializedWhileScheduled_listenerStillCalled() throws Exception {
+        wysiwygE.addAsyncValueChangeListener(tasks::add, event -> DESERIALIZED_VALUES.add(event.getValue()));
+        wysiwygE.setValue("a");
+        Assert.assertEquals(1, tasks.size());
+
+        WysiwygE copy = TestUtils.copy(wysiwygE);
+        copy.setValue("b");
+
+        Assert.assertEquals("b", DESERIALIZED_VALUES.poll(5, TimeUnit.SECONDS));
+        Assert.assertTrue(DESERIALIZED_VALUES.isEmpty());
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Stream;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.VaadinSession;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.pekka.Autosave;
+import org.vaadin.pekka.DraftStore;
+import org.vaadin.pekka.FileDraftStore;
+import org.vaadin.pekka.InMemoryDraftStore;
+import org.vaadin.pekka.WysiwygE;
+
+public class AutosaveTest {
+
+    private Path directory;
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("drafts");
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        scheduler.shutdownNow();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testChangesCoalescedIntoOneSave() {
+        List<Map<String, String>> saves = new ArrayList<>();
+        InMemoryDraftStore store = new InMemoryDraftStore() {
+            @Override
+            public void save(Map<String, String> drafts) {
+                saves.add(new HashMap<>(drafts));
+                super.save(drafts);
+            }
+        };
+        // a long interval, flushed by the test
+        Autosave autosave = new Autosave(store, scheduler, 60000);
+        WysiwygE first = new WysiwygE();
+        WysiwygE second = new WysiwygE();
+        autosave.bind(first, "first");
+        autosave.bind(second, "second");
+
+        TestUtils.setValueFromClient(first, "<p>a</p>");
+        TestUtils.setValueFromClient(first, "<p>ab</p>");
+        TestUtils.setValueFromClient(second, "<p>x</p>");
+        first.setValue("<p>from the server</p>");
+        Assert.assertTrue(saves.isEmpty());
+        Assert.assertEquals("<p>ab</p>", autosave.getDraft("first"));
+
+        autosave.flush();
+        autosave.flush();
+
+        Assert.assertEquals(1, saves.size());
+        Map<String, String> expected = new HashMap<>();
+        expected.put("first", "<p>ab</p>");
+        expected.put("second", "<p>x</p>");
+        Assert.assertEquals(expected, saves.get(0));
+
+        autosave.discard("first");
+        Assert.assertNull(autosave.getDraft("first"));
+    }
+
+    @Test
+    public void testFailedSaveKeptForNextBatch() {
+        boolean[] failing = {true};
+        InMemoryDraftStore store = new InMemoryDraftStore();
+        Autosave autosave = new Autosave(new DraftStore() {
+            @Override
+            public void save(Map<String, String> drafts) throws IOException {
+                if (failing[0]) {
+                    throw new IOException("Disk full");
+                }
+                store.save(drafts);
+            }
+
+            @Override
+            public String load(String key) {
+                return store.load(key);
+            }
+
+            @Override
+            public void remove(String key) {
+                store.remove(key);
+            }
+        }, scheduler, 60000);
+        WysiwygE editor = new WysiwygE();
+        autosave.bind(editor, "doc");
+        TestUtils.setValueFromClient(editor, "<p>a</p>");
+
+        try {
+            autosave.flush();
+            Assert.fail("The failure should be reported");
+        } catch (UncheckedIOException expected) {
+            // kept for the next batch
+        }
+        Assert.assertNull(store.load("doc"));
+        failing[0] = false;
+        autosave.flush();
+
+        Assert.assertEquals("<p>a</p>", store.load("doc"));
+    }
+
+    @Test
+    public void testDraftRestoredOnAttach() throws IOException {
+        Path journal = directory.resolve("drafts.journal");
+        try (FileDraftStore store = new FileDraftStore(journal)) {
+            Autosave autosave = new Autosave(store, scheduler, 60000);
+            WysiwygE editor = new WysiwygE();
+            autosave.bind(editor, "doc");
+            TestUtils.setValueFromClient(editor, "<p>unsaved</p>");
+            autosave.flush();
+        }
+
+        try (FileDraftStore store = new FileDraftStore(journal)) {
+            Autosave autosave = new Autosave(store, scheduler, 60000);
+            WysiwygE editor = new WysiwygE();
+            editor.setValue("<p>saved</p>");
+            autosave.bind(editor, "doc");
+            Assert.assertEquals("<p>saved</p>", editor.getValue());
+
+            new UI().add(editor);
+
+            Assert.assertEquals("<p>unsaved</p>", editor.getValue());
+        }
+    }
+
+    @Test
+    public void testDraftsScopedBySession() {
+        Autosave autosave = new Autosave(new InMemoryDraftStore(), scheduler, 60000);
+        WysiwygE first = new WysiwygE();
+        WysiwygE second = new WysiwygE();
+        sessionUI().add(first);
+        sessionUI().add(second);
+        autosave.bind(first, "doc");
+        autosave.bind(second, "doc");
+
+        TestUtils.setValueFromClient(first, "<p>first user's draft</p>");
+        autosave.flush();
+
+        WysiwygE reopened = new WysiwygE();
+        second.getUI().get().add(reopened);
+        autosave.bind(reopened, "doc");
+        Assert.assertEquals("", reopened.getValue());
+        Assert.assertEquals("", second.getValue());
+
+        // scoped by user, the draft follows the user to the next session
+        autosave.setScope(session -> "user");
+        WysiwygE editor = new WysiwygE();
+        sessionUI().add(editor);
+        autosave.bind(editor, "doc");
+        TestUtils.setValueFromClient(editor, "<p>user's draft</p>");
+        WysiwygE nextSession = new WysiwygE();
+        sessionUI().add(nextSession);
+        autosave.bind(nextSession, "doc");
+        Assert.assertEquals("<p>user's draft</p>", nextSession.getValue());
+    }
+
+    @Test
+    public void testFileStore_tornWriteTruncated() throws IOException {
+        Path journal = directory.resolve("drafts.journal");
+        try (FileDraftStore store = new FileDraftStore(journal)) {
+            store.save(Collections.singletonMap("a", "<p>one</p>"));
+            store.save(Collections.singletonMap("a", "<p>two</p>"));
+            store.save(Collections.singletonMap("b", "<p>ä</p>"));
+            store.remove("b");
+        }
+        long size = Files.size(journal);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // the start of a record that a crash interrupted
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3}));
+        }
+
+        try (FileDraftStore store = new FileDraftStore(journal)) {
+            Assert.assertEquals(size, Files.size(journal));
+            Assert.assertEquals("<p>two</p>", store.load("a"));
+            Assert.assertNull(store.load("b"));
+
+            store.save(Collections.singletonMap("b", "<p>three</p>"));
+            Assert.assertEquals("<p>three</p>", store.load("b"));
+        }
+    }
+
+    @Test
+    public void testFileStore_compacted() throws IOException {
+        Path journal = directory.resolve("drafts.journal");
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            value.append("<p>x</p>");
+        }
+        try (FileDraftStore store = new FileDraftStore(journal)) {
+            for (int i = 0; i < 50; i++) {
+                Map<String, String> drafts = new HashMap<>();
+                drafts.put("a", value + "a" + i);
+                drafts.put("b", value + "b" + i);
+                store.save(drafts);
+            }
+            Assert.assertTrue(Files.size(journal) < 4 * 2 * value.length());
+            Assert.assertEquals(value + "a49", store.load("a"));
+            Assert.assertEquals(value + "b49", store.load("b"));
+        }
+        try (FileDraftStore store = new FileDraftStore(journal)) {
+            Assert.assertEquals(value + "a49", store.load("a"));
+        }
+    }
+
+    @Test
+    public void testBoundEditor_serializable() throws IOException {
+        Autosave autosave = new Autosave(new InMemoryDraftStore(), scheduler, 60000);
+        UI ui = new UI();
+        WysiwygE editor = new WysiwygE();
+        ui.add(editor);
+        autosave.bind(editor, "key");
+
+        try (ObjectOutputStream out = new ObjectOutputStream(new ByteArrayOutputStream())) {
+            out.writeObject(ui);
+        }
+
+        TestUtils.setValueFromClient(editor, "<p>a</p>");
+        Assert.assertEquals("<p>a</p>", autosave.getDraft("key"));
+    }
+
+    private static UI sessionUI() {
+        UI ui = new UI();
+        ui.getInternals().setSession(new VaadinSession(null) {
+            @Override
+            public boolean hasLock() {
+                return true;
+            }
+        });
+        return ui;
+    }
+}
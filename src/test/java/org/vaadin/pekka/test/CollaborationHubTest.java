@@ -0,0 +1,251 @@
+package org.vaadin.pekka.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.Command;
+import com.vaadin.flow.shared.Registration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.pekka.CollaborationHub;
+import org.vaadin.pekka.WysiwygE;
+
+public class CollaborationHubTest {
+
+    private ScheduledExecutorService scheduler;
+    private CollaborationHub hub;
+
+    @Before
+    public void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        // merged explicitly with flush()
+        hub = new CollaborationHub("<p>hello world</p>", scheduler, TimeUnit.HOURS.toMillis(1));
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentEdits_bothKept() {
+        TestUI ui1 = new TestUI();
+        TestUI ui2 = new TestUI();
+        WysiwygE editor1 = bind(ui1);
+        WysiwygE editor2 = bind(ui2);
+        Assert.assertEquals("<p>hello world</p>", editor1.getValue());
+
+        TestUtils.setValueFromClient(editor1, "<p>hello big world</p>");
+        TestUtils.setValueFromClient(editor2, "<p>hello world!</p>");
+        hub.flush();
+
+        Assert.assertEquals("<p>hello big world!</p>", hub.getValue());
+        Assert.assertEquals(2, hub.getVersion());
+        Assert.assertEquals(hub.getValue(), editor1.getValue());
+        Assert.assertEquals(hub.getValue(), editor2.getValue());
+
+        // continues from the merged value
+        TestUtils.setValueFromClient(editor1, "<p>hi big world!</p>");
+        hub.flush();
+        Assert.assertEquals("<p>hi big world!</p>", hub.getValue());
+    }
+
+    @Test
+    public void testFanOut_onePushPerUiPerTick() {
+        TestUI ui1 = new TestUI();
+        TestUI ui2 = new TestUI();
+        WysiwygE editor = bind(ui1);
+        for (int i = 0; i < 24; i++) {
+            bind(ui1);
+            bind(ui2);
+        }
+
+        TestUtils.setValueFromClient(editor, "<p>hello</p>");
+        TestUtils.setValueFromClient(editor, "<p>hello!</p>");
+        hub.flush();
+
+        Assert.assertEquals("<p>hello!</p>", hub.getValue());
+        Assert.assertEquals(1, ui1.accessCount);
+        Assert.assertEquals(1, ui2.accessCount);
+        ui2.getChildren().forEach(child -> Assert.assertEquals("<p>hello!</p>", ((WysiwygE) child).getValue()));
+
+        hub.flush();
+        Assert.assertEquals(1, ui1.accessCount);
+    }
+
+    @Test
+    public void testServerValue_mergedWithClientEdits() {
+        TestUI ui1 = new TestUI();
+        TestUI ui2 = new TestUI();
+        WysiwygE editor1 = bind(ui1);
+        WysiwygE editor2 = bind(ui2);
+
+        hub.setValue("<p>hello world</p><p>server</p>");
+        TestUtils.setValueFromClient(editor2, "<p>hello world?</p>");
+        hub.flush();
+
+        Assert.assertEquals("<p>hello world?</p><p>server</p>", hub.getValue());
+        Assert.assertEquals(hub.getValue(), editor1.getValue());
+        Assert.assertEquals(hub.getValue(), editor2.getValue());
+    }
+
+    @Test
+    public void testUnbind_changesNotShared() {
+        TestUI ui = new TestUI();
+        WysiwygE editor = new WysiwygE();
+        ui.add(editor);
+        Registration registration = hub.bind(editor);
+        registration.remove();
+
+        TestUtils.setValueFromClient(editor, "<p>local</p>");
+        hub.flush();
+
+        Assert.assertEquals("<p>hello world</p>", hub.getValue());
+        Assert.assertEquals(0, ui.accessCount);
+    }
+
+    @Test
+    public void testStaleChangeOfDetachedEditor_resyncedNotMerged() {
+        TestUI ui = new TestUI();
+        WysiwygE editor1 = bind(ui);
+        WysiwygE editor2 = new WysiwygE();
+        hub.bind(editor2);
+
+        TestUtils.setValueFromClient(editor1, "<p>hello big world</p>");
+        hub.flush();
+        // no editor needs the first edit anymore
+        hub.flush();
+        TestUtils.setValueFromClient(editor2, "<p>hello world!</p>");
+        hub.flush();
+
+        Assert.assertEquals("<p>hello big world</p>", hub.getValue());
+        Assert.assertEquals(1, hub.getVersion());
+
+        ui.add(editor2);
+        Assert.assertEquals(hub.getValue(), editor2.getValue());
+    }
+
+    @Test
+    public void testSerialize_boundEditor_unboundCopy() throws IOException, ClassNotFoundException {
+        TestUI ui = new TestUI();
+        WysiwygE editor = bind(ui);
+
+        WysiwygE copy = TestUtils.copy(editor);
+        TestUtils.setValueFromClient(copy, "<p>copy</p>");
+        hub.flush();
+        Assert.assertEquals("<p>hello world</p>", hub.getValue());
+
+        TestUtils.setValueFromClient(editor, "<p>hello</p>");
+        hub.flush();
+        Assert.assertEquals("<p>hello</p>", hub.getValue());
+    }
+
+    @Test
+    public void testDetach_queuedChangeStillMerged() {
+        TestUI ui = new TestUI();
+        WysiwygE editor1 = bind(ui);
+        WysiwygE editor2 = bind(ui);
+
+        TestUtils.setValueFromClient(editor1, "<p>hello big world</p>");
+        TestUtils.setValueFromClient(editor2, "<p>hello world!</p>");
+        ui.remove(editor1);
+        hub.flush();
+        Assert.assertEquals("<p>hello big world!</p>", hub.getValue());
+
+        // reattached editors start over from the merged document
+        ui.add(editor1);
+        Assert.assertEquals(hub.getValue(), editor1.getValue());
+        TestUtils.setValueFromClient(editor1, "<p>hi big world!</p>");
+        hub.flush();
+        Assert.assertEquals("<p>hi big world!</p>", hub.getValue());
+        Assert.assertEquals(hub.getValue(), editor2.getValue());
+    }
+
+    @Test
+    public void testInterleavedChanges_transformedPastOwnEarlierChanges() {
+        hub.setValue("0123456789ABCDEFGHIJ");
+        hub.flush();
+        TestUI ui1 = new TestUI();
+        TestUI ui2 = new TestUI();
+        WysiwygE editorA = bind(ui1);
+        WysiwygE editorB = bind(ui2);
+
+        TestUtils.setValueFromClient(editorB, "0123456789XABCDEFGHIJ");
+        TestUtils.setValueFromClient(editorA, "aaaaa0123456789ABCDEFGHIJ");
+        TestUtils.setValueFromClient(editorA, "aaaaa0123456Y789ABCDEFGHIJ");
+        hub.flush();
+
+        Assert.assertEquals("aaaaa0123456Y789XABCDEFGHIJ", hub.getValue());
+        Assert.assertEquals(hub.getValue(), editorA.getValue());
+        Assert.assertEquals(hub.getValue(), editorB.getValue());
+    }
+
+    @Test
+    public void testChangesAcrossTicks_transformedPastUnpushedOwnChanges() {
+        hub.setValue("0123456789ABCDEFGHIJ");
+        hub.flush();
+        TestUI ui1 = new TestUI();
+        TestUI ui2 = new TestUI();
+        WysiwygE editorA = bind(ui1);
+        WysiwygE editorB = bind(ui2);
+        // neither editor gets the merged document before making its next changes
+        ui1.holdAccess = true;
+        ui2.holdAccess = true;
+
+        TestUtils.setValueFromClient(editorB, "0123456789XABCDEFGHIJ");
+        TestUtils.setValueFromClient(editorA, "aaaaa0123456789ABCDEFGHIJ");
+        hub.flush();
+        TestUtils.setValueFromClient(editorA, "aaaaa0123456Y789ABCDEFGHIJ");
+        TestUtils.setValueFromClient(editorB, "0123Z456789XABCDEFGHIJ");
+        hub.flush();
+        TestUtils.setValueFromClient(editorB, "0123Z456789XABCDEFGHIJbb");
+        TestUtils.setValueFromClient(editorA, "aaaaa0123456Y789ABCDEFGHIJcc");
+        hub.flush();
+
+        Assert.assertEquals("aaaaa0123Z456Y789XABCDEFGHIJbbcc", hub.getValue());
+        ui1.release();
+        ui2.release();
+        Assert.assertEquals(hub.getValue(), editorA.getValue());
+        Assert.assertEquals(hub.getValue(), editorB.getValue());
+    }
+
+    private WysiwygE bind(UI ui) {
+        WysiwygE editor = new WysiwygE();
+        ui.add(editor);
+        hub.bind(editor);
+        return editor;
+    }
+
+    /* Runs the access commands right away, there is no session to lock. */
+    private static class TestUI extends UI {
+        private int accessCount;
+        private final List<Command> held = new ArrayList<>();
+        private boolean holdAccess;
+
+        @Override
+        public Future<Void> access(Command command) {
+            accessCount++;
+            if (holdAccess) {
+                held.add(command);
+            } else {
+                command.execute();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        private void release() {
+            holdAccess = false;
+            held.forEach(Command::execute);
+            held.clear();
+        }
+    }
+}
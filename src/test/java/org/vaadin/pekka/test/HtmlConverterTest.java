@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka.test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.pekka.HtmlConverter;
+
+public class HtmlConverterTest {
+
+    @Test
+    public void testBlocksAndInlines() {
+        String html = "<h2>Title</h2><div style=\"text-align: justify;\">Some <b>bold</b>, <i>italic</i> "
+                + "and <strike>old</strike>&nbsp;text<br>next line<br></div><p><b> </b>x &lt; y</p>";
+
+        Assert.assertEquals("## Title\n\nSome **bold**, *italic* and ~~old~~ text\\\nnext line\n\nx \\< y",
+                HtmlConverter.toMarkdown(html));
+        Assert.assertEquals("Title\n\nSome bold, italic and old text\nnext line\n\nx < y",
+                HtmlConverter.toPlainText(html));
+    }
+
+    @Test
+    public void testWhitespaceMovedOutOfEmphasis() {
+        Assert.assertEquals("a **b** c", HtmlConverter.toMarkdown("a<b> b </b>c"));
+        Assert.assertEquals("\\# not a heading", HtmlConverter.toMarkdown("<p># not a heading</p>"));
+        Assert.assertEquals("1\\. not a list", HtmlConverter.toMarkdown("<p>1. not a list</p>"));
+    }
+
+    @Test
+    public void testListsAndQuotes() {
+        String html = "<ul><li>one</li><li>two<ol start=\"3\"><li>three</li><li>four</li></ol></li></ul>"
+                + "<blockquote><p>quoted</p><p>more</p></blockquote>";
+
+        Assert.assertEquals("- one\n- two\n  3. three\n  4. four\n\n> quoted\n>\n> more",
+                HtmlConverter.toMarkdown(html));
+        Assert.assertEquals("- one\n- two\n  3. three\n  4. four\n\nquoted\n\nmore",
+                HtmlConverter.toPlainText(html));
+    }
+
+    @Test
+    public void testTable() {
+        String html = "<table><tbody><tr><td>a</td><td>b|c</td></tr><tr><td><p>d</p><p>e</p></td></tr>"
+                + "</tbody></table><p>after</p>";
+
+        Assert.assertEquals("| a | b\\|c |\n| --- | --- |\n| d e |  |\n\nafter", HtmlConverter.toMarkdown(html));
+        Assert.assertEquals("a\tb|c\nd e\t\n\nafter", HtmlConverter.toPlainText(html));
+    }
+
+    @Test
+    public void testCodeLinksAndImages() {
+        String html = "<p>Run <code>a*b`c</code> or see <a href=\"https://example.com/a b\">the docs</a>"
+                + "<img src=\"https://example.com/i.png\" alt=\"logo\"><img src=\"data:image/png;base64,AAAA\" "
+                + "alt=\"inline\"></p><pre>  x = 1;\n  y = 2;\n</pre><script>alert(1)</script>";
+
+        Assert.assertEquals("Run `` a*b`c `` or see [the docs](https://example.com/a%20b)"
+                + "![logo](https://example.com/i.png)inline\n\n```\n  x = 1;\n  y = 2;\n```",
+                HtmlConverter.toMarkdown(html));
+        Assert.assertEquals("Run a*b`c or see the docslogoinline\n\n  x = 1;\n  y = 2;",
+                HtmlConverter.toPlainText(html));
+    }
+
+    @Test
+    public void testStreamingOutput() throws IOException {
+        StringWriter writer = new StringWriter();
+        HtmlConverter.convert("<p>one</p><p>two</p>", HtmlConverter.Format.PLAIN_TEXT, writer);
+
+        Assert.assertEquals("one\n\ntwo", writer.toString());
+    }
+
+    @Test
+    public void testConvertAll() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            values.add(i % 10 == 0 ? null : "<p><b>" + i + "</b></p>");
+        }
+
+        List<String> converted = HtmlConverter.convertAll(values, HtmlConverter.Format.MARKDOWN);
+
+        Assert.assertEquals(100, converted.size());
+        Assert.assertNull(converted.get(0));
+        Assert.assertEquals("**42**", converted.get(42));
+
+        List<String> results = new ArrayList<>();
+        HtmlConverter.convertAll(Arrays.asList(1, 2, 3, 4, 5).iterator(), i -> "<p>" + i + "</p>",
+                HtmlConverter.Format.PLAIN_TEXT, (i, text) -> results.add(i + "=" + text), new ForkJoinPool(2), 2);
+
+        Assert.assertEquals(Arrays.asList("1=1", "2=2", "3=3", "4=4", "5=5"), results);
+    }
+}
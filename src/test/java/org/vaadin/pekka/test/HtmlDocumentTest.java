@@ -0,0 +1,85 @@
+package org.vaadin.pekka.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.pekka.HtmlDocument;
+import org.vaadin.pekka.WysiwygE;
+
+import java.util.stream.Collectors;
+
+public class HtmlDocumentTest {
+
+    @Test
+    public void testParse_treeAndText() {
+        HtmlDocument document = HtmlDocument.parse(
+                "<h1>Title</h1><p>Some <b>bold<br>text</b> &amp; <a HREF='https://vaadin.com?a=1&amp;b=2'>a link</a></p><!-- comment --><p>1 &lt; 2");
+
+        Assert.assertEquals("TitleSome boldtext & a link1 < 2", document.getText());
+        Assert.assertEquals(3, document.getRoot().getChildren().size());
+        Assert.assertEquals("https://vaadin.com?a=1&b=2",
+                document.getElements("a").findFirst().get().getAttribute("href"));
+        Assert.assertEquals("h1,p,b,br,a,p",
+                document.getRoot().getDescendants().map(HtmlDocument.Element::getTag).collect(Collectors.joining(",")));
+    }
+
+    @Test
+    public void testParse_unmatchedEndTags_ignored() {
+        HtmlDocument document = HtmlDocument.parse("<div><span>a</div>b</span><p>c");
+
+        Assert.assertEquals("abc", document.getText());
+        Assert.assertEquals("div,span,p",
+                document.getRoot().getDescendants().map(HtmlDocument.Element::getTag).collect(Collectors.joining(",")));
+    }
+
+    @Test
+    public void testParse_deepNesting_noStackOverflow() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            html.append("<b>");
+        }
+        html.append("a");
+        HtmlDocument document = HtmlDocument.parse(html.toString());
+
+        Assert.assertEquals("a", document.getText());
+        Assert.assertEquals(4000, document.getElements("b").count());
+
+        WysiwygE wysiwygE = new WysiwygE();
+        wysiwygE.setValueEquality(WysiwygE.ValueEquality.CANONICAL);
+        wysiwygE.setValue(html.toString());
+        wysiwygE.setValue(html.append("\n").toString());
+        Assert.assertEquals(html.length() - 1, wysiwygE.getValue().length());
+    }
+
+    @Test(timeout = 10000)
+    public void testParse_deepUnmatchedEndTags_linear() {
+        int depth = 100000;
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            html.append("<b>");
+        }
+        html.append("a");
+        for (int i = 0; i < depth; i++) {
+            html.append("</i>");
+        }
+        html.append("</b>c");
+        HtmlDocument document = HtmlDocument.parse(html.toString());
+
+        Assert.assertEquals("ac", document.getText());
+        Assert.assertEquals(depth, document.getElements("b").count());
+        Assert.assertEquals(1, document.getRoot().getChildren().size());
+    }
+
+    @Test
+    public void testGetDocument_sharedUntilValueChanges() {
+        WysiwygE wysiwygE = new WysiwygE();
+        wysiwygE.setValue("<p>a</p>");
+
+        HtmlDocument document = wysiwygE.getDocument();
+        Assert.assertSame(document, wysiwygE.getDocument());
+        Assert.assertEquals("a", document.getText());
+
+        wysiwygE.setValue("<p>b</p>");
+        Assert.assertNotSame(document, wysiwygE.getDocument());
+        Assert.assertEquals("b", wysiwygE.getDocument().getText());
+    }
+}
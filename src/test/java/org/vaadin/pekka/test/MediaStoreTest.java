@@ -0,0 +1,53 @@
+package org.vaadin.pekka.test;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vaadin.pekka.FileMediaStore;
+import org.vaadin.pekka.InMemoryMediaStore;
+import org.vaadin.pekka.MediaStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class MediaStoreTest {
+
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testInMemoryMediaStore() throws IOException {
+        assertStore(new InMemoryMediaStore());
+    }
+
+    @Test
+    public void testFileMediaStore() throws IOException {
+        assertStore(new FileMediaStore(folder.getRoot().toPath().resolve("media")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testFileMediaStore_invalidHash_notRead() throws IOException {
+        new FileMediaStore(folder.getRoot().toPath()).read("../secret");
+    }
+
+    private void assertStore(MediaStore store) throws IOException {
+        Assert.assertNull(store.getMimeType(HASH));
+
+        store.store(HASH, "image/png", new byte[]{1, 2, 3});
+        store.store(HASH, "image/gif", new byte[]{4});
+
+        Assert.assertEquals("image/png", store.getMimeType(HASH));
+        try (InputStream in = store.read(HASH)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int read;
+            while ((read = in.read()) != -1) {
+                out.write(read);
+            }
+            Assert.assertArrayEquals(new byte[]{1, 2, 3}, out.toByteArray());
+        }
+    }
+}
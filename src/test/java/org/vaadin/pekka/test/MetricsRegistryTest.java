@@ -0,0 +1,93 @@
+package org.vaadin.pekka.test;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.internal.nodefeature.ElementPropertyMap;
+import com.vaadin.flow.server.VaadinSession;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.pekka.MetricsRegistry;
+import org.vaadin.pekka.MetricsRegistry.Metric;
+import org.vaadin.pekka.SimpleMetricsRegistry;
+import org.vaadin.pekka.WysiwygE;
+
+public class MetricsRegistryTest {
+
+    private SimpleMetricsRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new SimpleMetricsRegistry();
+        WysiwygE.setMetricsRegistry(registry);
+    }
+
+    @After
+    public void tearDown() {
+        WysiwygE.setMetricsRegistry(MetricsRegistry.NO_OP);
+    }
+
+    @Test
+    public void testValueChanges_recorded() {
+        WysiwygE wysiwygE = new WysiwygE();
+        wysiwygE.addValueChangeListener(event -> {
+        });
+
+        wysiwygE.setValue("<p>server</p>");
+        wysiwygE.getElement().getNode().getFeature(ElementPropertyMap.class)
+                .deferredUpdateFromClient("value", "<p>client value</p>").run();
+
+        Assert.assertEquals(1, registry.getCount(Metric.SYNC_ROUND_TRIPS));
+        Assert.assertEquals("<p>client value</p>".length(), registry.getSum(Metric.SYNC_RECEIVED_SIZE));
+        Assert.assertEquals(2, registry.getCount(Metric.DOCUMENT_SIZE));
+        Assert.assertEquals("<p>client value</p>".length(), registry.getMax(Metric.DOCUMENT_SIZE));
+        Assert.assertEquals(2, registry.getCount(Metric.LISTENER_LATENCY));
+
+        registry.reset();
+        Assert.assertEquals(0, registry.getCount(Metric.DOCUMENT_SIZE));
+        Assert.assertEquals(0, registry.getMax(Metric.DOCUMENT_SIZE));
+    }
+
+    @Test
+    public void testHistogram_powerOfTwoBuckets() {
+        WysiwygE wysiwygE = new WysiwygE();
+        for (long value : new long[]{0, 1, 5, 6, 7, 1000}) {
+            registry.record(wysiwygE, Metric.LISTENER_LATENCY, value);
+        }
+
+        long[] histogram = registry.getHistogram(Metric.LISTENER_LATENCY);
+        Assert.assertEquals(1, histogram[0]);
+        Assert.assertEquals(1, histogram[1]);
+        Assert.assertEquals(3, histogram[3]);
+        Assert.assertEquals(1, histogram[10]);
+        Assert.assertEquals(7, SimpleMetricsRegistry.getBucketUpperBound(3));
+        Assert.assertEquals(Long.MAX_VALUE, SimpleMetricsRegistry.getBucketUpperBound(63));
+
+        Assert.assertEquals(7, registry.getPercentile(Metric.LISTENER_LATENCY, 50));
+        Assert.assertEquals(1000, registry.getPercentile(Metric.LISTENER_LATENCY, 100));
+        Assert.assertEquals(0, registry.getPercentile(Metric.DOCUMENT_SIZE, 99));
+
+        registry.reset();
+        Assert.assertEquals(0, registry.getHistogram(Metric.LISTENER_LATENCY)[3]);
+    }
+
+    @Test
+    public void testUndoRedo_jsCallsCounted() {
+        UI ui = new UI();
+        ui.getInternals().setSession(new VaadinSession(null) {
+            @Override
+            public boolean hasLock() {
+                return true;
+            }
+        });
+        WysiwygE wysiwygE = new WysiwygE();
+        ui.add(wysiwygE);
+
+        wysiwygE.undo();
+        wysiwygE.redo();
+        ui.getInternals().getStateTree().runExecutionsBeforeClientResponse();
+
+        // batched together with the content editable state sent on attach
+        Assert.assertEquals(1, registry.getCount(Metric.JS_CALLS));
+    }
+}
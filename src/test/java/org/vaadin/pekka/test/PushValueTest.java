@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka.test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.Command;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.pekka.WysiwygE;
+
+public class PushValueTest {
+
+    @Test
+    public void testPushedValuesCoalescedPerUi() throws InterruptedException {
+        TestUI ui = new TestUI();
+        WysiwygE first = new WysiwygE();
+        WysiwygE second = new WysiwygE();
+        first.setPushInterval(200);
+        ui.add(first, second);
+        CountDownLatch set = new CountDownLatch(2);
+        first.addValueChangeListener(event -> {
+            if ("<p>first 99</p>".equals(event.getValue())) {
+                set.countDown();
+            }
+        });
+        second.addValueChangeListener(event -> {
+            if ("<p>second 99</p>".equals(event.getValue())) {
+                set.countDown();
+            }
+        });
+
+        Thread feeder = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                first.pushValue("<p>first " + i + "</p>");
+                second.pushValue("<p>second " + i + "</p>");
+            }
+        });
+        feeder.start();
+        feeder.join();
+
+        Assert.assertTrue(set.await(5, TimeUnit.SECONDS));
+        // the first batch is set right away, the rest are coalesced into the next one
+        Assert.assertTrue("Accessed " + ui.accessCount.get() + " times", ui.accessCount.get() <= 2);
+        Assert.assertEquals("<p>first 99</p>", first.getValue());
+        Assert.assertEquals("<p>second 99</p>", second.getValue());
+    }
+
+    @Test
+    public void testPushedWhileDetached_setWhenAttached() {
+        WysiwygE editor = new WysiwygE();
+
+        editor.pushValue("<p>a</p>");
+        editor.pushValue("<p>b</p>");
+        Assert.assertEquals("", editor.getValue());
+
+        TestUI ui = new TestUI();
+        ui.add(editor);
+        Assert.assertEquals("<p>b</p>", editor.getValue());
+        Assert.assertEquals(0, ui.accessCount.get());
+    }
+
+    private static class TestUI extends UI {
+        private final AtomicInteger accessCount = new AtomicInteger();
+
+        @Override
+        public synchronized Future<Void> access(Command command) {
+            accessCount.incrementAndGet();
+            command.execute();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
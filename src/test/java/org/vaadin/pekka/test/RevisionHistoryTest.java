@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.pekka.WysiwygE;
+
+public class RevisionHistoryTest {
+
+    private WysiwygE wysiwygE;
+
+    @Before
+    public void setup() {
+        wysiwygE = new WysiwygE();
+        wysiwygE.setValue("<p>0</p>");
+        wysiwygE.setRevisionHistoryLimit(1 << 20);
+    }
+
+    @Test
+    public void testUndoRedo() {
+        setValueFromClient("<p>1</p>");
+        wysiwygE.setValue("<p>2</p>");
+        Assert.assertEquals(0, wysiwygE.getOldestRevision());
+        Assert.assertEquals(2, wysiwygE.getLatestRevision());
+
+        wysiwygE.undo();
+        wysiwygE.undo();
+        wysiwygE.undo();
+        Assert.assertEquals("<p>0</p>", wysiwygE.getValue());
+        Assert.assertEquals(0, wysiwygE.getCurrentRevision());
+
+        wysiwygE.redo();
+        Assert.assertEquals("<p>1</p>", wysiwygE.getValue());
+        Assert.assertEquals(2, wysiwygE.getLatestRevision());
+
+        // a new edit drops the undone revisions
+        setValueFromClient("<p>1b</p>");
+        Assert.assertEquals(2, wysiwygE.getLatestRevision());
+        Assert.assertEquals("<p>1b</p>", wysiwygE.getRevision(2));
+        wysiwygE.redo();
+        Assert.assertEquals("<p>1b</p>", wysiwygE.getValue());
+    }
+
+    @Test
+    public void testUndoNotAllowed() {
+        setValueFromClient("<p>1</p>");
+        wysiwygE.setUndoAllowed(false);
+
+        wysiwygE.undo();
+
+        Assert.assertEquals("<p>1</p>", wysiwygE.getValue());
+        wysiwygE.setUndoAllowed(true);
+        wysiwygE.setRedoAllowed(false);
+        wysiwygE.undo();
+        wysiwygE.redo();
+        Assert.assertEquals("<p>0</p>", wysiwygE.getValue());
+    }
+
+    @Test
+    public void testRestoreRevision() {
+        setValueFromClient("<p>1</p>");
+        setValueFromClient("<p>2</p>");
+
+        wysiwygE.restoreRevision(0);
+
+        Assert.assertEquals("<p>0</p>", wysiwygE.getValue());
+        Assert.assertEquals(3, wysiwygE.getLatestRevision());
+        wysiwygE.undo();
+        Assert.assertEquals("<p>2</p>", wysiwygE.getValue());
+
+        try {
+            wysiwygE.restoreRevision(4);
+            Assert.fail("Revision 4 doesn't exist");
+        } catch (IllegalArgumentException expected) {
+            // not in the history
+        }
+    }
+
+    @Test
+    public void testRevisionsReconstructed() {
+        Random random = new Random(1);
+        List<String> values = new ArrayList<>();
+        values.add(wysiwygE.getValue());
+        StringBuilder value = new StringBuilder(wysiwygE.getValue());
+        for (int i = 0; i < 200; i++) {
+            int offset = random.nextInt(value.length() + 1);
+            if (random.nextBoolean() && offset < value.length()) {
+                value.delete(offset, Math.min(value.length(), offset + random.nextInt(5) + 1));
+            } else {
+                value.insert(offset, "<b>" + i + "</b>");
+            }
+            values.add(value.toString());
+            setValueFromClient(value.toString());
+        }
+
+        Assert.assertEquals(200, wysiwygE.getLatestRevision());
+        for (int i = 0; i < values.size(); i++) {
+            Assert.assertEquals(values.get(i), wysiwygE.getRevision(i));
+        }
+    }
+
+    @Test
+    public void testLimitedByBytes() {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            large.append("<p>x</p>");
+        }
+        wysiwygE.setRevisionHistoryLimit(500 * 1024);
+        for (int i = 0; i < 100; i++) {
+            // each edit spans most of the value, so each revision is a snapshot
+            setValueFromClient(large.toString() + i);
+            large.setCharAt(i, 'y');
+        }
+
+        Assert.assertEquals(100, wysiwygE.getLatestRevision());
+        Assert.assertTrue(wysiwygE.getOldestRevision() > 50);
+        Assert.assertEquals(wysiwygE.getValue(), wysiwygE.getRevision(wysiwygE.getLatestRevision()));
+        for (long revision = wysiwygE.getOldestRevision(); revision <= 100; revision++) {
+            Assert.assertTrue(wysiwygE.getRevision(revision).endsWith(String.valueOf(revision - 1)));
+        }
+
+        wysiwygE.setRevisionHistoryLimit(1);
+        Assert.assertEquals(100, wysiwygE.getOldestRevision());
+        wysiwygE.undo();
+        Assert.assertEquals(wysiwygE.getRevision(100), wysiwygE.getValue());
+
+        wysiwygE.setRevisionHistoryLimit(0);
+        try {
+            wysiwygE.getLatestRevision();
+            Assert.fail("There is no revision history");
+        } catch (IllegalStateException expected) {
+            // disabled
+        }
+    }
+
+    private void setValueFromClient(String value) {
+        TestUtils.setValueFromClient(wysiwygE, value);
+    }
+}
@@ -0,0 +1,97 @@
+package org.vaadin.pekka.test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.dom.Element;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.pekka.WysiwygE;
+import org.vaadin.pekka.WysiwygE.Tool;
+import org.vaadin.pekka.WysiwygE.ToolbarMode;
+
+public class SerializationTest {
+
+    private static final int EDITORS = 10;
+
+    /* Per editor, what is left of the component, the state tree nodes and the value listeners. */
+    private static final int MAX_BYTES_PER_EDITOR = 3 * 1024;
+
+    @Test
+    public void testSerializedSize_compactToolbar_bounded() throws IOException {
+        Assert.assertTrue(bytesPerEditor("<p>value</p>", ToolbarMode.COMPACT) < MAX_BYTES_PER_EDITOR);
+    }
+
+    @Test
+    public void testSerializedSize_elementsToolbar_toolElementsStored() throws IOException {
+        // the tool elements are state nodes the client knows, they stay in the session
+        Assert.assertTrue(bytesPerEditor("<p>value</p>", ToolbarMode.ELEMENTS)
+                > bytesPerEditor("<p>value</p>", ToolbarMode.COMPACT) + Tool.values().length * 50);
+    }
+
+    @Test
+    public void testSerializedSize_largeValue_storedOnce() throws IOException {
+        char[] chars = new char[100_000];
+        Arrays.fill(chars, 'x');
+        String value = "<p>" + new String(chars) + "</p>";
+
+        Assert.assertTrue(bytesPerEditor(value, ToolbarMode.COMPACT) < value.length() + MAX_BYTES_PER_EDITOR);
+    }
+
+    @Test
+    public void testDeserialize_toolbarRebuilt() throws IOException, ClassNotFoundException {
+        WysiwygE wysiwygE = new WysiwygE();
+        wysiwygE.setToolsInvisible(Tool.BOLD);
+
+        WysiwygE copy = TestUtils.copy(wysiwygE);
+        Assert.assertFalse(copy.isToolVisible(Tool.BOLD));
+        copy.setToolsVisible(Tool.BOLD);
+        copy.setToolsInvisible(Tool.ITALIC);
+
+        Assert.assertTrue(copy.isToolVisible(Tool.BOLD));
+        Assert.assertTrue(toolElement(copy, Tool.BOLD).isVisible());
+        Assert.assertFalse(toolElement(copy, Tool.ITALIC).isVisible());
+    }
+
+    @Test
+    public void testDeserialize_compactToolbar_visibilityKept() throws IOException, ClassNotFoundException {
+        WysiwygE wysiwygE = new WysiwygE();
+        wysiwygE.setToolbarMode(ToolbarMode.COMPACT);
+        wysiwygE.setToolsInvisible(Tool.BOLD);
+
+        WysiwygE copy = TestUtils.copy(wysiwygE);
+        Assert.assertFalse(copy.isToolVisible(Tool.BOLD));
+        Assert.assertEquals(0, copy.getElement().getChildCount());
+        copy.setToolsVisible(Tool.BOLD);
+
+        wysiwygE.setToolsVisible(Tool.BOLD);
+
+        Assert.assertTrue(copy.isToolVisible(Tool.BOLD));
+        Assert.assertEquals(wysiwygE.getElement().getProperty("compactToolbar"),
+                copy.getElement().getProperty("compactToolbar"));
+    }
+
+    private static int bytesPerEditor(String value, ToolbarMode toolbarMode) throws IOException {
+        UI ui = new UI();
+        ui.getInternals().getStateTree().collectChanges(change -> {
+        });
+        int empty = TestUtils.serialize(ui).length;
+        for (int i = 0; i < EDITORS; i++) {
+            WysiwygE wysiwygE = new WysiwygE();
+            wysiwygE.setToolbarMode(toolbarMode);
+            wysiwygE.setValue(value);
+            wysiwygE.setReadOnly(true);
+            ui.add(wysiwygE);
+        }
+        // the changes not sent to the client yet are in the session as well
+        ui.getInternals().getStateTree().collectChanges(change -> {
+        });
+        return (TestUtils.serialize(ui).length - empty) / EDITORS;
+    }
+
+    private static Element toolElement(WysiwygE wysiwygE, Tool tool) {
+        String tag = "wysiwyg-tool-" + tool.name().toLowerCase();
+        return wysiwygE.getElement().getChildren().filter(child -> tag.equals(child.getTag())).findFirst().get();
+    }
+}
@@ -0,0 +1,45 @@
+package org.vaadin.pekka.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import com.vaadin.flow.internal.nodefeature.ElementPropertyMap;
+import org.vaadin.pekka.WysiwygE;
+
+/**
+ * Helpers shared by the tests.
+ */
+final class TestUtils {
+
+    private TestUtils() {
+    }
+
+    /**
+     * Sets the value the way a sync from the browser does.
+     */
+    static void setValueFromClient(WysiwygE editor, String value) {
+        editor.getElement().getNode().getFeature(ElementPropertyMap.class)
+                .deferredUpdateFromClient("value", value).run();
+    }
+
+    static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns a copy of the object made by serializing and deserializing it, like a session moved to another server.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T copy(T object) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(object)))) {
+            return (T) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * MIT License
+ *
+ * Copyright 2018 Pekka Hyvönen.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.vaadin.pekka.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.dom.DomEvent;
+import com.vaadin.flow.internal.nodefeature.ElementListenerMap;
+import com.vaadin.flow.server.VaadinSession;
+import elemental.json.Json;
+import elemental.json.JsonObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.pekka.ValueOverflowEvent;
+import org.vaadin.pekka.WysiwygE;
+
+public class ValueOverflowTest {
+
+    private WysiwygE wysiwygE;
+    private List<ValueOverflowEvent> events;
+
+    @Before
+    public void setup() {
+        wysiwygE = new WysiwygE();
+        events = new ArrayList<>();
+        wysiwygE.addValueOverflowListener(events::add);
+    }
+
+    @Test
+    public void testMaxValueLength_longerValueRejected() {
+        wysiwygE.setMaxValueLength(10);
+        wysiwygE.setValue("<p>a</p>");
+
+        setValueFromClient("<p>too long</p>");
+
+        Assert.assertEquals("<p>a</p>", wysiwygE.getValue());
+        Assert.assertEquals("<p>a</p>", wysiwygE.getElement().getProperty("value"));
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(ValueOverflowEvent.Reason.MAX_LENGTH, events.get(0).getReason());
+        Assert.assertEquals("<p>too long</p>".length(), events.get(0).getSize());
+        Assert.assertTrue(events.get(0).isFromClient());
+
+        setValueFromClient("<p>ok</p>");
+        Assert.assertEquals("<p>ok</p>", wysiwygE.getValue());
+        Assert.assertEquals(1, events.size());
+    }
+
+    @Test
+    public void testMaxValueLength_filteredInBrowser() {
+        wysiwygE.setMaxValueLength(10);
+        Assert.assertEquals(10, wysiwygE.getMaxValueLength());
+
+        // the overflow reported by the browser without the value
+        JsonObject data = Json.createObject();
+        data.put("element.value.length", 12345);
+        data.put("element.value.length > 10", true);
+        data.put("element.value.length <= 10", false);
+        wysiwygE.getElement().getNode().getFeature(ElementListenerMap.class)
+                .fireEvent(new DomEvent(wysiwygE.getElement(), "value-changed", data));
+
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(12345, events.get(0).getSize());
+
+        wysiwygE.setValueSyncMode(WysiwygE.ValueSyncMode.DELTA);
+        wysiwygE.setMaxValueLength(0);
+        wysiwygE.setMaxValueLength(20);
+        Assert.assertEquals(20, wysiwygE.getMaxValueLength());
+    }
+
+    @Test
+    public void testMaxValueLength_deltaRejectedBeforeApplied() {
+        wysiwygE.setValue("<p>Hello</p>");
+        wysiwygE.setValueSyncMode(WysiwygE.ValueSyncMode.DELTA);
+        wysiwygE.setMaxValueLength(15);
+
+        fireDelta(3, 0, " world");
+
+        Assert.assertEquals("<p>Hello</p>", wysiwygE.getValue());
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("<p>Hello world</p>".length(), events.get(0).getSize());
+    }
+
+    @Test
+    public void testMaxIngressRate_sessionOverRateRejected() {
+        UI ui = new UI();
+        ui.getInternals().setSession(new VaadinSession(null) {
+            @Override
+            public boolean hasLock() {
+                return true;
+            }
+        });
+        WysiwygE other = new WysiwygE();
+        ui.add(wysiwygE, other);
+        wysiwygE.setMaxIngressRate(100);
+        other.setMaxIngressRate(100);
+
+        setValueFromClient(repeat('a', 80));
+        TestUtils.setValueFromClient(other, repeat('b', 10));
+        // only 10 left, a rejected sync takes nothing
+        setValueFromClient(repeat('c', 80));
+        setValueFromClient(repeat('d', 10));
+
+        Assert.assertEquals(repeat('d', 10), wysiwygE.getValue());
+        Assert.assertEquals(repeat('b', 10), other.getValue());
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(ValueOverflowEvent.Reason.RATE, events.get(0).getReason());
+    }
+
+    @Test
+    public void testMaxIngressRate_syncLargerThanBurstRejected() {
+        UI ui = new UI();
+        ui.getInternals().setSession(new VaadinSession(null) {
+            @Override
+            public boolean hasLock() {
+                return true;
+            }
+        });
+        ui.add(wysiwygE);
+        wysiwygE.setMaxIngressRate(100);
+
+        setValueFromClient(repeat('a', 101));
+
+        Assert.assertEquals("", wysiwygE.getValue());
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(101, events.get(0).getSize());
+    }
+
+    @Test
+    public void testMaxIngressRate_unappliedDeltaNotCharged() {
+        UI ui = new UI();
+        ui.getInternals().setSession(new VaadinSession(null) {
+            @Override
+            public boolean hasLock() {
+                return true;
+            }
+        });
+        ui.add(wysiwygE);
+        wysiwygE.setValueSyncMode(WysiwygE.ValueSyncMode.DELTA);
+        wysiwygE.setMaxIngressRate(100);
+
+        // out of range, the full value is requested instead
+        fireDelta(50, 0, repeat('a', 80));
+        fireDelta(0, 0, repeat('b', 80));
+
+        Assert.assertEquals(repeat('b', 80), wysiwygE.getValue());
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testMaxIngressRate_bucketSerializedWithSession() throws Exception {
+        UI ui = new UI();
+        VaadinSession session = new VaadinSession(null) {
+            @Override
+            public boolean hasLock() {
+                return true;
+            }
+        };
+        ui.getInternals().setSession(session);
+        ui.add(wysiwygE);
+        wysiwygE.setMaxIngressRate(100);
+        setValueFromClient(repeat('a', 90));
+
+        // the session moves to another server, where the time of the last refill means nothing
+        String name = "org.vaadin.pekka.IngressLimiter";
+        session.setAttribute(name, TestUtils.copy(session.getAttribute(name)));
+        setValueFromClient(repeat('b', 80));
+        setValueFromClient(repeat('c', 10));
+
+        Assert.assertEquals(repeat('c', 10), wysiwygE.getValue());
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(80, events.get(0).getSize());
+
+        Thread.sleep(200);
+        setValueFromClient(repeat('d', 10));
+        Assert.assertEquals(repeat('d', 10), wysiwygE.getValue());
+    }
+
+    private void setValueFromClient(String value) {
+        TestUtils.setValueFromClient(wysiwygE, value);
+    }
+
+    private void fireDelta(int offset, int length, String text) {
+        JsonObject data = Json.createObject();
+        data.put("event.detail.epoch", 1);
+        data.put("event.detail.revision", 0);
+        data.put("event.detail.offset", offset);
+        data.put("event.detail.length", length);
+        data.put("event.detail.text", text);
+        data.put("element.value.length <= 15", true);
+        wysiwygE.getElement().getNode().getFeature(ElementListenerMap.class)
+                .fireEvent(new DomEvent(wysiwygE.getElement(), "value-delta", data));
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -1,10 +1,33 @@
 package org.vaadin.pekka.test;
 
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.internal.PendingJavaScriptInvocation;
+import com.vaadin.flow.dom.DomEvent;
+import com.vaadin.flow.dom.Element;
+import com.vaadin.flow.internal.nodefeature.ElementListenerMap;
+import com.vaadin.flow.internal.nodefeature.ElementPropertyMap;
+import com.vaadin.flow.server.VaadinSession;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.vaadin.pekka.InMemoryMediaStore;
+import org.vaadin.pekka.ValueChangeRange;
 import org.vaadin.pekka.WysiwygE;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 public class WysiwygETest {
@@ -89,4 +112,490 @@ public class WysiwygETest {
         Stream.of(WysiwygE.Tool.values()).forEach(tool -> Assert.assertFalse("Tool "+ tool + " should not be visible", wysiwygE.isToolVisible(tool)));
     }
 
+    @Test
+    public void testSetToolVisibility() {
+        wysiwygE.setToolVisibility(EnumSet.of(WysiwygE.Tool.BOLD, WysiwygE.Tool.ITALIC));
+
+        Assert.assertFalse(wysiwygE.isAllToolsVisible());
+        Stream.of(WysiwygE.Tool.values()).forEach(tool -> Assert.assertEquals("Tool " + tool,
+                tool == WysiwygE.Tool.BOLD || tool == WysiwygE.Tool.ITALIC, wysiwygE.isToolVisible(tool)));
+        Assert.assertEquals(2, wysiwygE.getElement().getChildren().filter(Element::isVisible).count());
+
+        wysiwygE.setToolVisibility(EnumSet.allOf(WysiwygE.Tool.class));
+
+        Assert.assertTrue(wysiwygE.isAllToolsVisible());
+        Assert.assertTrue(wysiwygE.getElement().getChildren().allMatch(Element::isVisible));
+    }
+
+    @Test
+    public void testCustomToolbar_appendedToolElementsFound() {
+        wysiwygE = new WysiwygE() {
+            @Override
+            protected void initToolbar() {
+                getElement().appendChild(new Element("wysiwyg-tool-bold"), new Element("wysiwyg-tool-italic"));
+            }
+        };
+
+        Assert.assertTrue(wysiwygE.isToolVisible(WysiwygE.Tool.BOLD));
+        Assert.assertTrue(wysiwygE.isToolVisible(WysiwygE.Tool.ITALIC));
+        Assert.assertFalse(wysiwygE.isToolVisible(WysiwygE.Tool.UNDERLINE));
+
+        wysiwygE.setToolVisible(WysiwygE.Tool.BOLD, false);
+
+        Assert.assertFalse(wysiwygE.isToolVisible(WysiwygE.Tool.BOLD));
+        Assert.assertEquals(1, wysiwygE.getElement().getChildren().filter(Element::isVisible).count());
+    }
+
+    @Test
+    public void testCompactToolbar_noToolElements_visibilityInProperty() {
+        wysiwygE.setToolsVisible(WysiwygE.Tool.BOLD);
+        wysiwygE.setToolbarMode(WysiwygE.ToolbarMode.COMPACT);
+
+        Assert.assertEquals(0, wysiwygE.getElement().getChildCount());
+        Assert.assertEquals(1 << WysiwygE.Tool.BOLD.ordinal(), wysiwygE.getElement().getProperty("compactToolbar", 0));
+        Assert.assertTrue(wysiwygE.isToolVisible(WysiwygE.Tool.BOLD));
+
+        wysiwygE.setToolVisible(WysiwygE.Tool.ITALIC, true);
+        Assert.assertTrue(wysiwygE.isToolVisible(WysiwygE.Tool.ITALIC));
+        wysiwygE.setAllToolsVisible(true);
+        Assert.assertTrue(wysiwygE.isAllToolsVisible());
+        wysiwygE.setToolsInvisible(WysiwygE.Tool.TABLE);
+        Assert.assertFalse(wysiwygE.isToolVisible(WysiwygE.Tool.TABLE));
+
+        wysiwygE.setToolbarMode(WysiwygE.ToolbarMode.ELEMENTS);
+
+        Assert.assertFalse(wysiwygE.getElement().hasProperty("compactToolbar"));
+        Assert.assertEquals(WysiwygE.Tool.values().length, wysiwygE.getElement().getChildCount());
+        Assert.assertEquals(WysiwygE.Tool.values().length - 1,
+                wysiwygE.getElement().getChildren().filter(Element::isVisible).count());
+        Assert.assertFalse(wysiwygE.isToolVisible(WysiwygE.Tool.TABLE));
+    }
+
+    @Test
+    public void testStreamingValue_roundTrip() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 100_000) {
+            builder.append("<p>Hyvää päivää \uD83D\uDE00</p>");
+        }
+        String value = builder.toString();
+
+        wysiwygE.readValueFrom(new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+        Assert.assertEquals(value, wysiwygE.getValue());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        wysiwygE.writeValueTo(bytes, StandardCharsets.UTF_8);
+        Assert.assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+
+        wysiwygE.readValueFrom(new StringReader(value), value.length());
+        Assert.assertEquals(value, wysiwygE.getValue());
+
+        StringWriter writer = new StringWriter();
+        wysiwygE.readValueFrom(new StringReader(""));
+        wysiwygE.writeValueTo(writer);
+        Assert.assertEquals("", writer.toString());
+    }
+
+    @Test
+    public void testMediaStore_embeddedMediaReplacedWithUrls() throws IOException {
+        wysiwygE = new WysiwygE() {
+            @Override
+            protected String getMediaUrl(String hash) {
+                return "media/wysiwyg-e-media-" + hash;
+            }
+        };
+        InMemoryMediaStore store = new InMemoryMediaStore();
+        wysiwygE.setMediaStore(store);
+        String data = Base64.getEncoder().encodeToString(new byte[]{1, 2, 3});
+
+        wysiwygE.setValue("<img src=\"data:image/png;base64," + data + "\"><p>data: text</p><img src=\"data:image/png;base64," + data + "\">");
+
+        String url = "media/wysiwyg-e-media-039058c6f2c0cb492c533b0a4d14ef77cc0f78abccced5287d84a1a2011cfb81";
+        Assert.assertEquals("<img src=\"" + url + "\"><p>data: text</p><img src=\"" + url + "\">", wysiwygE.getValue());
+        Assert.assertEquals("image/png", store.getMimeType(url.substring(url.length() - 64)));
+
+        // value saved in another session
+        wysiwygE.setValue("<img src=\"VAADIN/dynamic/resource/1/abc/wysiwyg-e-media-" + url.substring(url.length() - 64) + "\">");
+        Assert.assertEquals("<img src=\"" + url + "\">", wysiwygE.getValue());
+
+        // value from the client
+        wysiwygE.getElement().getNode().getFeature(ElementPropertyMap.class)
+                .deferredUpdateFromClient("value", "<img src='data:image/png;base64," + data + "'>").run();
+        Assert.assertEquals("<img src='" + url + "'>", wysiwygE.getValue());
+        Assert.assertEquals("<img src='" + url + "'>", wysiwygE.getElement().getProperty("value"));
+    }
+
+    @Test(timeout = 10000)
+    public void testMediaStore_relinkLinearInUndelimitedText() {
+        wysiwygE = new WysiwygE() {
+            @Override
+            protected String getMediaUrl(String hash) {
+                return "media/" + hash;
+            }
+        };
+        wysiwygE.setMediaStore(new InMemoryMediaStore());
+        String hash = "039058c6f2c0cb492c533b0a4d14ef77cc0f78abccced5287d84a1a2011cfb81";
+        StringBuilder value = new StringBuilder("<p style=\"background:url(a/wysiwyg-e-media-" + hash + ")\">");
+        for (int i = 0; i < 20000; i++) {
+            value.append("x/wysiwyg-e-media-");
+        }
+        value.append("</p>");
+
+        wysiwygE.setValue(value.toString());
+
+        Assert.assertEquals(value.toString().replace("a/wysiwyg-e-media-" + hash, "media/" + hash),
+                wysiwygE.getValue());
+    }
+
+    @Test
+    public void testMediaStore_scriptableTypesNotStored() {
+        InMemoryMediaStore store = new InMemoryMediaStore();
+        wysiwygE.setMediaStore(store);
+        String svg = "<img src=\"data:image/svg+xml;base64,"
+                + Base64.getEncoder().encodeToString("<svg onload=\"x()\"/>".getBytes(StandardCharsets.UTF_8)) + "\">";
+
+        wysiwygE.setValue(svg);
+
+        Assert.assertEquals(svg, wysiwygE.getValue());
+    }
+
+    @Test
+    public void testDeltaSync_deltasAppliedToValue() {
+        wysiwygE.setValue("<p>Hello</p>");
+        wysiwygE.setValueSyncMode(WysiwygE.ValueSyncMode.DELTA);
+        AtomicInteger events = new AtomicInteger();
+        wysiwygE.addValueChangeListener(event -> {
+            Assert.assertTrue(event.isFromClient());
+            events.incrementAndGet();
+        });
+
+        fireDelta(1, 0, 8, 0, " world", "<p>Hello world</p>".hashCode());
+        Assert.assertEquals("<p>Hello world</p>", wysiwygE.getValue());
+
+        fireDelta(1, 1, 3, 5, "Bye", null);
+        Assert.assertEquals("<p>Bye world</p>", wysiwygE.getValue());
+        Assert.assertEquals(2, events.get());
+        Assert.assertEquals(WysiwygE.ValueSyncMode.DELTA, wysiwygE.getValueSyncMode());
+    }
+
+    @Test
+    public void testDeltaSync_checksumMismatch_valueNotChanged() {
+        wysiwygE.setValue("<p>Hello</p>");
+        wysiwygE.setValueSyncMode(WysiwygE.ValueSyncMode.DELTA);
+
+        fireDelta(1, 0, 8, 0, " world", 42);
+        Assert.assertEquals("<p>Hello</p>", wysiwygE.getValue());
+
+        // the full value sent as a response to the resync request
+        fireDelta(1, 1, 0, -1, "<p>Hello world</p>", null);
+        Assert.assertEquals("<p>Hello world</p>", wysiwygE.getValue());
+    }
+
+    @Test
+    public void testDeltaSync_staleEpochAfterServerSetValue_ignored() {
+        wysiwygE.setValueSyncMode(WysiwygE.ValueSyncMode.DELTA);
+        wysiwygE.setValue("<p>Server</p>");
+
+        fireDelta(1, 0, 0, 0, "<p>Client</p>", null);
+        Assert.assertEquals("<p>Server</p>", wysiwygE.getValue());
+    }
+
+    @Test
+    public void testStaticRenderMode_readOnlyShownAsSanitizedHtml() {
+        wysiwygE.setRenderMode(WysiwygE.RenderMode.STATIC);
+        wysiwygE.setValue("<p onclick='alert(1)'>Hello<script>alert(2)</script> <a href='javascript:alert(3)'>x</a></p>");
+        Assert.assertFalse(wysiwygE.isRenderedStatically());
+        Assert.assertNull(staticElement());
+
+        wysiwygE.setReadOnly(true);
+
+        Assert.assertTrue(wysiwygE.isRenderedStatically());
+        Assert.assertTrue(wysiwygE.getElement().hasAttribute("static"));
+        Assert.assertEquals("<p>Hello <a>x</a></p>", staticElement().getProperty("innerHTML"));
+        // the static copy is sent instead of the value, not in addition to it
+        Assert.assertFalse(wysiwygE.getElement().hasProperty("value"));
+
+        wysiwygE.setValue("<p style=\"color: red\">Bye &amp; <b>bold</b></p>");
+        Assert.assertEquals("<p style=\"color: red\">Bye &amp; <b>bold</b></p>", staticElement().getProperty("innerHTML"));
+        Assert.assertFalse(wysiwygE.getElement().hasProperty("value"));
+
+        wysiwygE.setReadOnly(false);
+
+        Assert.assertFalse(wysiwygE.isRenderedStatically());
+        Assert.assertFalse(wysiwygE.getElement().hasAttribute("static"));
+        Assert.assertNull(staticElement());
+        Assert.assertEquals("<p style=\"color: red\">Bye &amp; <b>bold</b></p>", wysiwygE.getValue());
+        Assert.assertEquals(wysiwygE.getValue(), wysiwygE.getElement().getProperty("value"));
+    }
+
+    @Test
+    public void testStaticRenderMode_disabled_shownStatically() {
+        wysiwygE.setEnabled(false);
+        Assert.assertFalse(wysiwygE.isRenderedStatically());
+
+        wysiwygE.setRenderMode(WysiwygE.RenderMode.STATIC);
+        Assert.assertTrue(wysiwygE.isRenderedStatically());
+        Assert.assertNotNull(staticElement());
+
+        wysiwygE.setRenderMode(WysiwygE.RenderMode.EDITOR);
+        Assert.assertNull(staticElement());
+    }
+
+    @Test
+    public void testLazyRenderMode_staticUntilActivated() {
+        AtomicInteger events = new AtomicInteger();
+        wysiwygE.addValueChangeListener(event -> events.incrementAndGet());
+        wysiwygE.setRenderMode(WysiwygE.RenderMode.LAZY);
+        wysiwygE.setValue("<p>Hello</p>");
+
+        Assert.assertTrue(wysiwygE.isRenderedStatically());
+        Assert.assertEquals("<p>Hello</p>", staticElement().getProperty("innerHTML"));
+        Assert.assertEquals("<p>Hello</p>", wysiwygE.getValue());
+
+        wysiwygE.getElement().getNode().getFeature(ElementListenerMap.class)
+                .fireEvent(new DomEvent(wysiwygE.getElement(), "lazy-activate", Json.createObject()));
+
+        Assert.assertFalse(wysiwygE.isRenderedStatically());
+        Assert.assertNull(staticElement());
+        Assert.assertEquals("<p>Hello</p>", wysiwygE.getElement().getProperty("value"));
+
+        wysiwygE.getElement().getNode().getFeature(ElementPropertyMap.class)
+                .deferredUpdateFromClient("value", "<p>Hello world</p>").run();
+        Assert.assertEquals("<p>Hello world</p>", wysiwygE.getValue());
+        Assert.assertEquals(2, events.get());
+
+        // read-only is still shown statically after the activation
+        wysiwygE.setReadOnly(true);
+        Assert.assertTrue(wysiwygE.isRenderedStatically());
+    }
+
+    @Test
+    public void testCommands_batchedIntoOneInvocation() {
+        UI ui = new UI();
+        ui.getInternals().setSession(new VaadinSession(null) {
+            @Override
+            public boolean hasLock() {
+                return true;
+            }
+        });
+        ui.add(wysiwygE);
+        ui.getInternals().getStateTree().runExecutionsBeforeClientResponse();
+        ui.getInternals().dumpPendingJavaScriptInvocations();
+
+        wysiwygE.setReadOnly(true);
+        wysiwygE.undo();
+        wysiwygE.undo();
+        wysiwygE.setReadOnly(false);
+        wysiwygE.insertHtml("<b>x</b>");
+        ui.getInternals().getStateTree().runExecutionsBeforeClientResponse();
+
+        List<PendingJavaScriptInvocation> invocations = ui.getInternals().dumpPendingJavaScriptInvocations();
+        Assert.assertEquals(1, invocations.size());
+        JsonArray commands = (JsonArray) invocations.get(0).getInvocation().getParameters().get(0);
+        Assert.assertEquals("[[\"setContentEditable\",true],[\"undo\"],[\"undo\"],[\"insertHtml\",\"<b>x</b>\"]]",
+                commands.toJson());
+    }
+
+    @Test
+    public void testCommands_staticEditor_keptUntilActivated() {
+        UI ui = new UI();
+        ui.getInternals().setSession(new VaadinSession(null) {
+            @Override
+            public boolean hasLock() {
+                return true;
+            }
+        });
+        wysiwygE.setRenderMode(WysiwygE.RenderMode.LAZY);
+        ui.add(wysiwygE);
+        ui.getInternals().getStateTree().runExecutionsBeforeClientResponse();
+        ui.getInternals().dumpPendingJavaScriptInvocations();
+
+        wysiwygE.undo();
+        wysiwygE.insertHtml("<b>x</b>");
+        ui.getInternals().getStateTree().runExecutionsBeforeClientResponse();
+        Assert.assertTrue(ui.getInternals().dumpPendingJavaScriptInvocations().isEmpty());
+
+        wysiwygE.activateLazily();
+        ui.getInternals().getStateTree().runExecutionsBeforeClientResponse();
+
+        List<PendingJavaScriptInvocation> invocations = ui.getInternals().dumpPendingJavaScriptInvocations();
+        JsonArray commands = invocations.stream()
+                .filter(invocation -> invocation.getInvocation().getExpression().contains("execute("))
+                .map(invocation -> (JsonArray) invocation.getInvocation().getParameters().get(0))
+                .findFirst().get();
+        Assert.assertEquals("[[\"setContentEditable\",true],[\"undo\"],[\"insertHtml\",\"<b>x</b>\"]]",
+                commands.toJson());
+    }
+
+    @Test
+    public void testChangeRange_htmlAndText() {
+        wysiwygE.setValue("<p>Hello world</p>");
+        List<ValueChangeRange> ranges = new ArrayList<>();
+        wysiwygE.addValueChangeListener(event -> ranges.add(wysiwygE.getChangeRange(event)));
+        wysiwygE.addValueChangeListener(event -> ranges.add(wysiwygE.getChangeRange(event)));
+
+        wysiwygE.setValue("<p>Hello <b>big</b> world</p>");
+
+        Assert.assertEquals(2, ranges.size());
+        Assert.assertSame(ranges.get(0), ranges.get(1));
+        ValueChangeRange range = ranges.get(0);
+        Assert.assertEquals(9, range.getHtmlOffset());
+        Assert.assertEquals(0, range.getRemovedHtmlLength());
+        Assert.assertEquals("<b>big</b> ", range.getInsertedHtml());
+        Assert.assertEquals(6, range.getTextOffset());
+        Assert.assertEquals(0, range.getRemovedTextLength());
+        Assert.assertEquals("big ", range.getInsertedText());
+        Assert.assertTrue(range.isTextChanged());
+
+        ranges.clear();
+        wysiwygE.setValue("<p>Hello <i>big</i> world</p>");
+        Assert.assertFalse(ranges.get(0).isTextChanged());
+    }
+
+    @Test
+    public void testChangeRange_deltaSync_rangeFromClient() {
+        wysiwygE.setValue("<p>Hello</p>");
+        wysiwygE.setValueSyncMode(WysiwygE.ValueSyncMode.DELTA);
+        List<ValueChangeRange> ranges = new ArrayList<>();
+        wysiwygE.addValueChangeListener(event -> ranges.add(wysiwygE.getChangeRange(event)));
+
+        // a range the plain diff would not find, the client knows better
+        fireDelta(1, 0, 3, 5, "Hello world", null);
+
+        Assert.assertEquals(3, ranges.get(0).getHtmlOffset());
+        Assert.assertEquals(5, ranges.get(0).getRemovedHtmlLength());
+        Assert.assertEquals("Hello world", ranges.get(0).getInsertedHtml());
+        Assert.assertEquals(5, ranges.get(0).getTextOffset());
+        Assert.assertEquals(" world", ranges.get(0).getInsertedText());
+    }
+
+    @Test
+    public void testCanonicalValueEquality_onlySemanticChangesFireEvents() {
+        wysiwygE.setValueEquality(WysiwygE.ValueEquality.CANONICAL);
+        wysiwygE.setValue("<p style=\"color: red; font-size: 12px\" title=\"t\">Hello <b>world</b></p>");
+        AtomicInteger events = new AtomicInteger();
+        wysiwygE.addValueChangeListener(event -> events.incrementAndGet());
+
+        setValueFromClient("<p title='t' style='font-size:12px;color:red'>Hello \n <span><b>world</b></span><i></i><br></p>\n");
+        wysiwygE.setValue("  <p title=\"t\" style=\"color: red; font-size: 12px\">Hello <b>world</b><br></p>");
+
+        Assert.assertEquals(0, events.get());
+        Assert.assertEquals("<p style=\"color: red; font-size: 12px\" title=\"t\">Hello <b>world</b></p>", wysiwygE.getValue());
+
+        setValueFromClient("<p style=\"color: red; font-size: 12px\" title=\"t\">Hello <b>world!</b></p>");
+        Assert.assertEquals(1, events.get());
+
+        wysiwygE.setValueEquality(WysiwygE.ValueEquality.EXACT);
+        setValueFromClient("<p style=\"color: red; font-size: 12px\" title=\"t\">Hello <b>world!</b> </p>");
+        Assert.assertEquals(2, events.get());
+    }
+
+    @Test
+    public void testCanonicalValueEquality_visibleWhitespaceIsAChange() {
+        wysiwygE.setValueEquality(WysiwygE.ValueEquality.CANONICAL);
+        wysiwygE.setValue("<p>a b</p>");
+
+        setValueFromClient("<p>a&nbsp; b</p>");
+        Assert.assertEquals("<p>a&nbsp; b</p>", wysiwygE.getValue());
+
+        setValueFromClient("<p>a\u00A0 b</p>");
+        Assert.assertEquals("<p>a&nbsp; b</p>", wysiwygE.getValue());
+    }
+
+    @Test
+    public void testCanonicalValueEquality_onlyPlaceholderBreakIgnored() {
+        wysiwygE.setValueEquality(WysiwygE.ValueEquality.CANONICAL);
+        wysiwygE.setValue("<p>a<br></p>");
+
+        setValueFromClient("<p>a</p>");
+        Assert.assertEquals("<p>a<br></p>", wysiwygE.getValue());
+
+        setValueFromClient("<p>a<br><br></p>");
+        Assert.assertEquals("<p>a<br><br></p>", wysiwygE.getValue());
+
+        setValueFromClient("<p>a<br><br><br></p>");
+        Assert.assertEquals("<p>a<br><br><br></p>", wysiwygE.getValue());
+    }
+
+    @Test
+    public void testCanonicalValueEquality_deltaSyncFollowsClientValue() {
+        wysiwygE.setValueEquality(WysiwygE.ValueEquality.CANONICAL);
+        wysiwygE.setValue("<p>Hello</p>");
+        wysiwygE.setValueSyncMode(WysiwygE.ValueSyncMode.DELTA);
+
+        fireDelta(1, 0, 8, 0, "<br>", null);
+        Assert.assertEquals("<p>Hello</p>", wysiwygE.getValue());
+
+        // applied to what the client has, not to the value of the field
+        fireDelta(1, 1, 12, 0, "!", "<p>Hello<br>!</p>".hashCode());
+        Assert.assertEquals("<p>Hello<br>!</p>", wysiwygE.getValue());
+    }
+
+    @Test
+    public void testSanitize_allowedByVisibleTools() {
+        wysiwygE.setToolsInvisible(WysiwygE.Tool.TABLE, WysiwygE.Tool.AUDIO);
+        String html = "<table><tbody><tr><td>a</td></tr></tbody></table><audio src=\"a.mp3\"></audio>"
+                + "<p><b onclick=\"x()\">b</b><script>x()</script></p>";
+
+        Assert.assertEquals("a<p><b>b</b></p>", wysiwygE.sanitize(html));
+
+        String clean = "<p style=\"text-align: justify;\"><b>b</b> &amp; c</p>";
+        Assert.assertSame(clean, wysiwygE.sanitize(clean));
+
+        wysiwygE.setToolsVisible(WysiwygE.Tool.TABLE);
+        Assert.assertTrue(wysiwygE.sanitize(html).startsWith("<table><tbody><tr><td>a</td>"));
+    }
+
+    @Test
+    public void testSanitizeClientValues_sanitizedAndSentBack() {
+        wysiwygE.setSanitizeClientValues(true);
+
+        setValueFromClient("<p>a<img src=\"x\" onerror=\"x()\"></p>");
+
+        Assert.assertEquals("<p>a<img src=\"x\"></p>", wysiwygE.getValue());
+        Assert.assertEquals(wysiwygE.getValue(), wysiwygE.getElement().getProperty("value"));
+    }
+
+    @Test
+    public void testSanitizeClientValues_embeddedMediaStillOffloaded() {
+        wysiwygE = new WysiwygE() {
+            @Override
+            protected String getMediaUrl(String hash) {
+                return "media/" + hash;
+            }
+        };
+        wysiwygE.setMediaStore(new InMemoryMediaStore());
+        wysiwygE.setSanitizeClientValues(true);
+        String data = Base64.getEncoder().encodeToString(new byte[]{1, 2, 3});
+
+        setValueFromClient("<audio controls src=\"data:audio/mpeg;base64," + data + "\"></audio>"
+                + "<video><source src=\"data:video/mp4;base64," + data + "\"></video>");
+
+        String url = "media/039058c6f2c0cb492c533b0a4d14ef77cc0f78abccced5287d84a1a2011cfb81";
+        Assert.assertEquals("<audio controls=\"\" src=\"" + url + "\"></audio><video><source src=\"" + url
+                + "\"></video>", wysiwygE.getValue());
+    }
+
+    private void setValueFromClient(String value) {
+        TestUtils.setValueFromClient(wysiwygE, value);
+    }
+
+    private Element staticElement() {
+        return wysiwygE.getElement().getChildren().filter(child -> "static".equals(child.getAttribute("slot")))
+                .findFirst().orElse(null);
+    }
+
+    private void fireDelta(int epoch, int revision, int offset, int length, String text, Integer checksum) {
+        JsonObject data = Json.createObject();
+        data.put("event.detail.epoch", epoch);
+        data.put("event.detail.revision", revision);
+        data.put("event.detail.offset", offset);
+        data.put("event.detail.length", length);
+        data.put("event.detail.text", text);
+        if (checksum != null) {
+            data.put("event.detail.checksum", checksum);
+        }
+        wysiwygE.getElement().getNode().getFeature(ElementListenerMap.class)
+                .fireEvent(new DomEvent(wysiwygE.getElement(), "value-delta", data));
+    }
+
 }